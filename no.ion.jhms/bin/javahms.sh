@@ -18,12 +18,38 @@ Options:
       Set the current thread's context class loader to the one associated with
       the hybrid module with the given name and version, instead of that
       associated with --module.
+  --cds-archive FILE
+      Use the Class Data Sharing (CDS) archive FILE, which includes the
+      classes of the hybrid modules, to launch faster.  If FILE does not
+      exist, it is written when the JVM exits, and used on later launches.
+      Remove FILE to write a new archive, e.g. when a JAR has changed.
+  --checksum-cache FILE
+      Cache the SHA-256 checksum of hybrid modular JARs in FILE, and reuse them
+      on later launches for JARs that are unchanged.  The checksums are used to
+      verify that JARs claiming the same hybrid module are identical.
+  --class-bytes-cache DIR
+      Cache the uncompressed classes and resources of compressed hybrid modular
+      JARs in DIR, and define classes from the cache on later launches instead
+      of inflating them.  Use with --checksum-cache, since the cache is keyed
+      by the SHA-256 checksum of the JAR.
+  --discovery-threads N
+      Open and read up to N hybrid modular JARs concurrently when discovering
+      the hybrid modules on the module path. The default is 1.
   --java-options,-j TOK JAVA_OPTION... TOK
       All command-line arguments following TOK up to but not including the next
       TOK (JAVA_OPTION...) will be passed through to the java invocation.
       JAVA_OPTIONS... must not specify the class path. As a special case: if
       the first TOK is one of (, {, or [, the end token must be ), }, or ],
       respectively. See below for more.
+  --lazy-class-loaders
+      Create the class loader of a required hybrid module only when one of its
+      classes is first loaded.  The hybrid modules are still resolved up
+      front, only their class loaders are deferred.
+  --max-open-jars N
+      Keep at most N hybrid modular JARs open that are read with a module
+      reader, e.g. multi-release JARs, closing the least recently used JARs.  A
+      closed JAR is opened again when needed.  Memory-mapped JARs keep no file
+      open, and are not limited.  The default is no limit.
   --module,-m MODULE[/[/]CLASS]
       Specifies the main module and class used to launch the application.
       CLASS defaults to the main class of MODULE.  MODULE//CLASS means the
@@ -35,6 +61,20 @@ Options:
   --module-path,-p PATH
       A : separated list of paths, each path is a path to a hybrid modular JAR
       file or a directory containing such files.
+  --platform-module-index FILE
+      Read the platform modules from the index FILE instead of finding them
+      with the system module finder.  If FILE does not exist, or was written
+      by another JDK, the platform modules are found by the system module
+      finder, and FILE is written for later launches.
+  --record-class-load-profile FILE
+      Record the classes defined by the hybrid modules, in order, and write
+      them to FILE on exit.
+  --replay-class-load-profile FILE
+      Load the classes recorded in FILE by --record-class-load-profile on one
+      thread per processor, while the main method runs.
+  --descriptor-cache FILE
+      Cache the module descriptor and packages of each hybrid modular JAR in
+      FILE, and reuse them on later launches for JARs that are unchanged.
 
 To pass java command-line arguments (JAVA_OPTIONS...) to the java invocation
 when launching a JHMS application, the administrator would pick a token (TOK)
@@ -88,6 +128,15 @@ function Main {
                 jhms_args+=("$1" "$2")
                 shift 2 || true
                 ;;
+            --cds-archive)
+                if test -e "$2"
+                then
+                    java_options+=("-XX:SharedArchiveFile=$2")
+                else
+                    java_options+=("-XX:ArchiveClassesAtExit=$2")
+                fi
+                shift 2 || true
+                ;;
             --help|-h) Usage ;;
             --java-options|-j)
                 shift
@@ -125,6 +174,18 @@ function Main {
                 jhms_args+=("$1" "$2")
                 shift 2 || true
                 ;;
+            --checksum-cache|--class-bytes-cache|--discovery-threads|--max-open-jars|--descriptor-cache)
+                jhms_args+=("$1" "$2")
+                shift 2 || true
+                ;;
+            --platform-module-index|--record-class-load-profile|--replay-class-load-profile)
+                jhms_args+=("$1" "$2")
+                shift 2 || true
+                ;;
+            --lazy-class-loaders)
+                jhms_args+=("$1")
+                shift
+                ;;
             --module|-m)
                 if [[ "$2" =~ ^([^/]*)//(.*)$ ]]
                 then
@@ -11,6 +11,9 @@ abstract class BaseModule {
 
     private volatile List<String> unexportedPackages = null;
 
+    /** The ordinal in the {@link SharedPackageIndex} the module is registered in, or -1. */
+    private int ordinal = -1;
+
     /** Verify 'name' is a valid JPMS module name, or otherwise throw an {@link IllegalArgumentException}. */
     static void validateModuleName(String name) {
         // It would be preferable to call jdk.internal.module.Checks.requireModuleName(), but that's not exported.
@@ -30,6 +33,10 @@ abstract class BaseModule {
         this.exports = exports;
     }
 
+    int ordinal() { return ordinal; }
+
+    void setOrdinal(int ordinal) { this.ordinal = ordinal; }
+
     Set<String> packagesVisibleTo(BaseModule module) {
         // All packages in this module are visible to this module.
         if (module.name.equals(name)) {
@@ -0,0 +1,33 @@
+package no.ion.jhms;
+
+/** A snapshot of the counters of a cache. */
+public class CacheCounters {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+
+    CacheCounters(long hits, long misses, long evictions, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    /** The number of lookups answered by the cache. */
+    public long hits() { return hits; }
+
+    /** The number of lookups not answered by the cache. */
+    public long misses() { return misses; }
+
+    /** The number of entries removed from the cache to bound its size. */
+    public long evictions() { return evictions; }
+
+    /** The current number of entries in the cache. */
+    public int size() { return size; }
+
+    @Override
+    public String toString() {
+        return "CacheCounters{hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size + '}';
+    }
+}
@@ -0,0 +1,68 @@
+package no.ion.jhms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+import static no.ion.jhms.ExceptionUtil.uncheck;
+
+/** Reads and writes the file of an on-disk cache, e.g. {@link DescriptorCache}, starting with a magic and version. */
+class CacheFile {
+    private CacheFile() {}
+
+    @FunctionalInterface
+    interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Returns what is read from the file, or empty if the file does not exist or is invalid. */
+    static <T> Optional<T> read(Path file, int magic, int formatVersion, Reader<T> reader) {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != magic || in.readInt() != formatVersion) {
+                return Optional.empty();
+            }
+
+            return Optional.of(reader.read(in));
+        } catch (IOException | RuntimeException e) {
+            // A missing, truncated, or otherwise invalid cache is just a cold cache.
+            return Optional.empty();
+        }
+    }
+
+    /** Write the file, replacing any existing file atomically. */
+    static void write(Path file, int magic, int formatVersion, Writer writer) {
+        Path directory = file.toAbsolutePath().getParent();
+        uncheck(() -> Files.createDirectories(directory));
+        Path temporaryFile = uncheck(() -> Files.createTempFile(directory, file.getFileName().toString(), ".tmp"));
+        try {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                out.writeInt(magic);
+                out.writeInt(formatVersion);
+                writer.write(out);
+            }
+
+            try {
+                Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write cache file " + file, e);
+        } finally {
+            uncheck(() -> Files.deleteIfExists(temporaryFile));
+        }
+    }
+}
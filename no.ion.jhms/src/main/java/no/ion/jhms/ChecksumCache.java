@@ -0,0 +1,134 @@
+package no.ion.jhms;
+
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * An on-disk cache of the SHA-256 checksums of hybrid modular JARs, which avoids digesting the same unchanged JARs
+ * on every start, see {@link HybridModuleJar#checksumEqual(HybridModuleJar)}.
+ *
+ * <p>A checksum is keyed by the {@link FileIdentity} of the file (device ID, i-node, size, and modification time)
+ * rather than the path. Files without a file key, e.g. on some non-Linux file systems, are not cached.</p>
+ *
+ * <p>The cache file is rewritten by {@link #save()} after a miss, with the checksums used since the cache was
+ * loaded, followed by other checksums up to a total of {@value #MAX_ENTRIES}. Failing to write the file is logged,
+ * since the cache is only an optimization.</p>
+ */
+class ChecksumCache {
+    private static final System.Logger logger = System.getLogger(ChecksumCache.class.getName());
+    private static final int MAGIC = 0x4a484d43; // "JHMC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SHA256_LENGTH = 32;
+    static final int MAX_ENTRIES = 4096;
+
+    private final Path file;
+
+    /** The checksums read from the cache file. */
+    private final Map<FileIdentity, byte[]> cachedEntries;
+
+    /** The checksums looked up or computed through the cache. */
+    private final ConcurrentHashMap<FileIdentity, byte[]> usedEntries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /** The number of misses when the cache file was last saved. */
+    private long savedMisses = 0;
+
+    /** Returns the cache backed by the given file, which is empty if the file does not exist or is invalid. */
+    static ChecksumCache load(Path file) {
+        return new ChecksumCache(file, read(file).orElseGet(HashMap::new));
+    }
+
+    private ChecksumCache(Path file, Map<FileIdentity, byte[]> cachedEntries) {
+        this.file = file;
+        this.cachedEntries = cachedEntries;
+    }
+
+    /** Returns the SHA-256 checksum of the file from the cache, or computed by {@code sha256} on a miss. */
+    byte[] sha256(Path path, Supplier<byte[]> sha256) {
+        if (path.getFileSystem() != FileSystems.getDefault()) {
+            return sha256.get();
+        }
+
+        FileIdentity identity = FileIdentity.of(path);
+        if (!identity.hasFileKey()) {
+            // Without the i-node, two files could have the same identity.
+            return sha256.get();
+        }
+
+        byte[] checksum = usedEntries.get(identity);
+        if (checksum == null) {
+            checksum = cachedEntries.get(identity);
+            if (checksum != null) {
+                usedEntries.put(identity, checksum);
+            }
+        }
+
+        if (checksum != null) {
+            hits.increment();
+            return checksum;
+        }
+
+        misses.increment();
+        checksum = sha256.get();
+        if (identity.equals(FileIdentity.of(path))) {
+            // Not modified while digesting
+            usedEntries.put(identity, checksum);
+        }
+        return checksum;
+    }
+
+    CacheCounters counters() { return new CacheCounters(hits.sum(), misses.sum(), 0, usedEntries.size()); }
+
+    /** Write the cache file if there has been a miss since the last save, replacing the file atomically. */
+    synchronized void save() {
+        long misses = this.misses.sum();
+        if (misses == savedMisses) {
+            return;
+        }
+        savedMisses = misses;
+
+        var entries = new LinkedHashMap<FileIdentity, byte[]>(usedEntries);
+        for (var entry : cachedEntries.entrySet()) {
+            if (entries.size() >= MAX_ENTRIES) {
+                break;
+            }
+            entries.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+
+        try {
+            CacheFile.write(file, MAGIC, FORMAT_VERSION, out -> {
+                out.writeInt(entries.size());
+                for (var entry : entries.entrySet()) {
+                    entry.getKey().write(out);
+                    out.write(entry.getValue());
+                }
+            });
+        } catch (UncheckedIOException e) {
+            logger.log(System.Logger.Level.WARNING, "Failed to save the checksum cache " + file, e);
+        }
+    }
+
+    private static Optional<Map<FileIdentity, byte[]>> read(Path file) {
+        return CacheFile.read(file, MAGIC, FORMAT_VERSION, in -> {
+            int size = in.readInt();
+            var entries = new HashMap<FileIdentity, byte[]>();
+            for (int i = 0; i < size; ++i) {
+                FileIdentity identity = FileIdentity.read(in);
+                byte[] checksum = new byte[SHA256_LENGTH];
+                in.readFully(checksum);
+                entries.put(identity, checksum);
+            }
+            return entries;
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package no.ion.jhms;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An on-disk cache of the uncompressed entries of hybrid modular JARs, which avoids inflating the classes of the
+ * same JARs on every start.
+ *
+ * <p>The cache is a directory with a file per JAR, named by the SHA-256 checksum of the JAR. The file is a
+ * {@link ModuleImage} with the single JAR, and is mapped: Class bytes are read from slices of the mapping. Files
+ * are never removed: The directory may be cleared at any time, e.g. when JARs are upgraded.</p>
+ *
+ * <p>On a miss, the file is written when the content of a JAR with compressed entries is first opened, typically
+ * by the first class load from the JAR: All of its entries are then inflated and written once, one entry at a
+ * time, before the class is defined. A failure to write the file is logged, and the entries are then inflated from
+ * the JAR as without the cache.</p>
+ */
+class ClassBytesCache {
+    private static final System.Logger logger = System.getLogger(ClassBytesCache.class.getName());
+
+    private final Path directory;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    ClassBytesCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the entries of the JAR, uncompressed from the cache if the JAR has compressed entries.
+     *
+     * @param jar     the JAR, for its descriptor and checksum
+     * @param jarFile the content of the JAR
+     */
+    JarEntries entries(HybridModuleJar jar, MappedJarFile jarFile) {
+        if (!jarFile.hasDeflatedEntries()) {
+            // Already read in place from the mapped JAR file.
+            return jarFile;
+        }
+
+        Path file = directory.resolve(jar.sha256String() + ".image");
+        JarEntries entries = read(file, jar);
+        if (entries != null) {
+            hits.increment();
+            return entries;
+        }
+
+        misses.increment();
+        try {
+            ModuleImage.write(file, jar.path(), jar.sha256(), jar.descriptor(), jarFile);
+        } catch (UncheckedIOException e) {
+            logger.log(System.Logger.Level.WARNING, "Failed to save the class bytes of " + jar.path() + " to " + file, e);
+            return jarFile;
+        }
+
+        entries = read(file, jar);
+        return entries == null ? jarFile : entries;
+    }
+
+    CacheCounters counters() { return new CacheCounters(hits.sum(), misses.sum(), 0, 0); }
+
+    /** Returns the entries in the cache file, or null if the file does not exist, is invalid, or is of another JAR. */
+    private static JarEntries read(Path file, HybridModuleJar jar) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try {
+            ModuleImage image = ModuleImage.open(file);
+            if (image.entries().size() != 1 || !Arrays.equals(image.jars().get(0).sha256(), jar.sha256())) {
+                return null;
+            }
+            return image.entries().get(0);
+        } catch (InvalidHybridModuleException | UncheckedIOException e) {
+            // A truncated or otherwise invalid file is rewritten.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package no.ion.jhms;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The classes defined by the hybrid module class loaders of a container, in the order they were defined, e.g. during
+ * a training run. Replaying the profile on later starts loads the same classes ahead of their first use, see
+ * {@link HybridModuleContainer#replayClassLoadProfile(Path, int)}.
+ */
+class ClassLoadProfile {
+    private static final int MAGIC = 0x4a484d43; // "JHMC"
+    private static final int FORMAT_VERSION = 1;
+
+    private final ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<>();
+
+    /** A class defined by the class loader of a hybrid module. */
+    static class Entry {
+        private final HybridModuleId hybridModuleId;
+        private final String className;
+
+        Entry(HybridModuleId hybridModuleId, String className) {
+            this.hybridModuleId = hybridModuleId;
+            this.className = className;
+        }
+
+        HybridModuleId hybridModuleId() { return hybridModuleId; }
+        String className() { return className; }
+
+        @Override
+        public String toString() { return hybridModuleId + "/" + className; }
+    }
+
+    /** Returns the profile in the file, or empty if the file does not exist or is invalid. */
+    static Optional<ClassLoadProfile> read(Path file) {
+        return CacheFile.read(file, MAGIC, FORMAT_VERSION, in -> {
+            int hybridModuleCount = in.readInt();
+            var hybridModuleIds = new ArrayList<HybridModuleId>(hybridModuleCount);
+            for (int i = 0; i < hybridModuleCount; ++i) {
+                hybridModuleIds.add(HybridModuleId.fromId(in.readUTF()));
+            }
+
+            var profile = new ClassLoadProfile();
+            int size = in.readInt();
+            for (int i = 0; i < size; ++i) {
+                HybridModuleId hybridModuleId = hybridModuleIds.get(in.readInt());
+                profile.record(hybridModuleId, in.readUTF());
+            }
+            return profile;
+        });
+    }
+
+    /** Record that the class was defined by the class loader of the hybrid module. Thread-safe. */
+    void record(HybridModuleId hybridModuleId, String className) {
+        entries.add(new Entry(hybridModuleId, className));
+    }
+
+    /** The classes recorded so far, in the order they were recorded. */
+    List<Entry> entries() { return List.copyOf(entries); }
+
+    /** Write the classes recorded so far, replacing the file atomically. */
+    void write(Path file) {
+        List<Entry> entries = entries();
+        var indices = new HashMap<HybridModuleId, Integer>();
+        var hybridModuleIds = new ArrayList<HybridModuleId>();
+        for (var entry : entries) {
+            if (indices.putIfAbsent(entry.hybridModuleId(), hybridModuleIds.size()) == null) {
+                hybridModuleIds.add(entry.hybridModuleId());
+            }
+        }
+
+        CacheFile.write(file, MAGIC, FORMAT_VERSION, out -> {
+            out.writeInt(hybridModuleIds.size());
+            for (var hybridModuleId : hybridModuleIds) {
+                out.writeUTF(hybridModuleId.toString());
+            }
+
+            out.writeInt(entries.size());
+            for (var entry : entries) {
+                out.writeInt(indices.get(entry.hybridModuleId()));
+                out.writeUTF(entry.className());
+            }
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package no.ion.jhms;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The class transformers of a hybrid module, with the on-disk cache of their output, if any. Only the class loaders
+ * of hybrid modules with transformers have a transformation.
+ */
+class ClassTransformation {
+    private final HybridModuleJar jar;
+    private final String hybridModuleId;
+    private final List<ClassTransformer> transformers;
+
+    /** The cache of all JARs, or null. */
+    private final TransformedClassCache cache;
+
+    /** The cached classes of this JAR and transformers, resolved on first use. */
+    private volatile TransformedClassCache.Classes cachedClasses = null;
+
+    /** @param cache the cache of transformed classes, or null */
+    ClassTransformation(HybridModuleJar jar, List<ClassTransformer> transformers, TransformedClassCache cache) {
+        this.jar = jar;
+        this.hybridModuleId = jar.hybridModuleId().toString();
+        this.transformers = List.copyOf(transformers);
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the bytes of the class to define: Either {@code classBytes}, or the transformed bytes.
+     *
+     * @param classBytes the bytes of the class in the JAR, see {@link HybridModuleJar#getClassBytes(String)}
+     */
+    ByteBuffer transform(String className, ByteBuffer classBytes) {
+        TransformedClassCache.Classes cachedClasses = cachedClasses();
+        if (cachedClasses != null) {
+            Optional<byte[]> cached = cachedClasses.get(className);
+            if (cached != null) {
+                return cached.map(ByteBuffer::wrap).orElse(classBytes);
+            }
+        }
+
+        // The buffer may be reused if a transformer loads a class, and is copied.
+        byte[] original = new byte[classBytes.remaining()];
+        classBytes.get(original);
+        byte[] bytes = original;
+        boolean transformed = false;
+        for (var transformer : transformers) {
+            byte[] transformerBytes = transformer.transform(hybridModuleId, className, bytes);
+            if (transformerBytes != null) {
+                bytes = transformerBytes;
+                transformed = true;
+            }
+        }
+
+        if (cachedClasses != null) {
+            cachedClasses.put(className, transformed ? Optional.of(bytes) : Optional.empty());
+        }
+
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private TransformedClassCache.Classes cachedClasses() {
+        if (cache == null) {
+            return null;
+        }
+
+        TransformedClassCache.Classes classes = cachedClasses;
+        if (classes == null) {
+            classes = cache.classes(jar, transformers);
+            cachedClasses = classes;
+        }
+
+        return classes;
+    }
+}
@@ -0,0 +1,24 @@
+package no.ion.jhms;
+
+/**
+ * Transforms the bytes of the classes of a hybrid module before they are defined, e.g. to weave in tracing, see
+ * {@link HybridModuleContainer.Params#addClassTransformer(String, ClassTransformer)}.
+ */
+public interface ClassTransformer {
+    /**
+     * The name and version of the transformation, e.g. "tracing-1.2". Transformed classes may be cached on disk by
+     * the checksum of the JAR and the versions of the transformers, and the version must therefore be distinct
+     * from other transformers, and change whenever the transformer would transform the same class differently.
+     */
+    String version();
+
+    /**
+     * Returns the transformed bytes of the class, or null to leave the class unchanged. Called with the class
+     * loading lock of the class held.
+     *
+     * @param hybridModuleId the ID of the hybrid module defining the class, e.g. "foo@1.2.3"
+     * @param className      the binary name of the class
+     * @param classBytes     the bytes of the class, possibly transformed by earlier transformers
+     */
+    byte[] transform(String hybridModuleId, String className, byte[] classBytes);
+}
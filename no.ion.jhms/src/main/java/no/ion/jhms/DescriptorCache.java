@@ -0,0 +1,158 @@
+package no.ion.jhms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An on-disk cache of what is read from each hybrid modular JAR at discovery: the module-info.class and the set of
+ * packages. Resolution is not cached: the read closures and the owners of packages are computed on each launch.
+ *
+ * <p>A JAR is identified by its path, size, modification time, and file key (device and i-node on Linux). On a hit,
+ * the descriptor is read from the cached module-info.class with the cached packages, and the JAR itself is not
+ * opened until a class or resource is needed.</p>
+ *
+ * <p>The cache file is rewritten by {@link #save()} after a miss, with the JARs opened since the cache was
+ * loaded. Failing to write the file is logged, since the cache is only an optimization.</p>
+ */
+class DescriptorCache {
+    private static final System.Logger logger = System.getLogger(DescriptorCache.class.getName());
+    private static final int MAGIC = 0x4a484d53; // "JHMS"
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path file;
+
+    /** The entries read from the cache file. */
+    private final Map<String, Entry> cachedEntries;
+
+    /** The entries of the JARs opened through the cache. */
+    private final ConcurrentHashMap<String, Entry> usedEntries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /** The number of misses when the cache file was last saved. */
+    private long savedMisses = 0;
+
+    /** Returns the cache backed by the given file, which is empty if the file does not exist or is invalid. */
+    static DescriptorCache load(Path file) {
+        return new DescriptorCache(file, read(file).orElseGet(HashMap::new));
+    }
+
+    private DescriptorCache(Path file, Map<String, Entry> cachedEntries) {
+        this.file = file;
+        this.cachedEntries = cachedEntries;
+    }
+
+    /** Open the hybrid modular JAR, with the descriptor from the cache if it is valid. */
+    HybridModuleJar open(Path jarPath) {
+        if (jarPath.getFileSystem() != FileSystems.getDefault()) {
+            return HybridModuleJar.open(jarPath);
+        }
+
+        String key = jarPath.toAbsolutePath().normalize().toString();
+        FileIdentity identity = FileIdentity.of(jarPath);
+
+        Entry entry = cachedEntries.get(key);
+        if (entry != null && entry.identity.equals(identity)) {
+            ModuleDescriptor descriptor = ModuleDescriptor.read(ByteBuffer.wrap(entry.moduleInfo), () -> entry.packages);
+            usedEntries.put(key, entry);
+            hits.increment();
+            return HybridModuleJar.open(jarPath, descriptor);
+        }
+
+        var moduleInfo = new ByteArrayOutputStream();
+        HybridModuleJar jar = HybridModuleJar.open(jarPath, buffer -> {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            moduleInfo.writeBytes(bytes);
+        });
+        if (moduleInfo.size() > 0) {
+            // Otherwise it is an automatic module, which fails later at resolution.
+            usedEntries.put(key, new Entry(identity, moduleInfo.toByteArray(), jar.descriptor().packages()));
+        }
+        misses.increment();
+        return jar;
+    }
+
+    CacheCounters counters() { return new CacheCounters(hits.sum(), misses.sum(), 0, usedEntries.size()); }
+
+    /** Write the cache file if there has been a miss since the last save, replacing the file atomically. */
+    synchronized void save() {
+        long misses = this.misses.sum();
+        if (misses == savedMisses) {
+            return;
+        }
+        savedMisses = misses;
+
+        var entries = new HashMap<>(usedEntries);
+        try {
+            CacheFile.write(file, MAGIC, FORMAT_VERSION, out -> {
+                out.writeInt(entries.size());
+                for (var keyAndEntry : entries.entrySet()) {
+                    out.writeUTF(keyAndEntry.getKey());
+                    keyAndEntry.getValue().write(out);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            logger.log(System.Logger.Level.WARNING, "Failed to save the descriptor cache " + file, e);
+        }
+    }
+
+    private static Optional<Map<String, Entry>> read(Path file) {
+        return CacheFile.read(file, MAGIC, FORMAT_VERSION, in -> {
+            int size = in.readInt();
+            var entries = new HashMap<String, Entry>();
+            for (int i = 0; i < size; ++i) {
+                entries.put(in.readUTF(), Entry.read(in));
+            }
+            return entries;
+        });
+    }
+
+    private static class Entry {
+        private final FileIdentity identity;
+        private final byte[] moduleInfo;
+        private final Set<String> packages;
+
+        private Entry(FileIdentity identity, byte[] moduleInfo, Set<String> packages) {
+            this.identity = identity;
+            this.moduleInfo = moduleInfo;
+            this.packages = packages;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            identity.write(out);
+            out.writeInt(moduleInfo.length);
+            out.write(moduleInfo);
+            out.writeInt(packages.size());
+            for (String packageName : packages) {
+                out.writeUTF(packageName);
+            }
+        }
+
+        private static Entry read(DataInputStream in) throws IOException {
+            FileIdentity identity = FileIdentity.read(in);
+            byte[] moduleInfo = in.readNBytes(in.readInt());
+            int packageCount = in.readInt();
+            var packages = new TreeSet<String>();
+            for (int i = 0; i < packageCount; ++i) {
+                packages.add(in.readUTF());
+            }
+            return new Entry(identity, moduleInfo, packages);
+        }
+    }
+}
@@ -11,7 +11,8 @@ import static no.ion.jhms.ProgramUtil.validateRootHybridModule;
 /**
  * Entrypoint for executing a "fat JAR".  A fat JAR is intended to be run on the class path, containing
  * this module's content, and is supposed to start a JHMS container with a root hybrid module given by $1,
- * and main class $2, and with a module path of all the *.jar files in the fat JAR's META-INF/mod/ directory.
+ * and main class $2, and with a module path of all the *.jar files in the fat JAR's META-INF/mod/ directory,
+ * and the hybrid modules of the fat JAR's META-INF/mod.image module image, see {@link ImageMain}.
  */
 public class FatMain {
     public static void main(String... args) {
@@ -24,7 +25,10 @@ public class FatMain {
                          "\n" +
                          "The module path is the META-INF/mod/ directory in FATJAR. FATJAR is an extension\n" +
                          "of the no.ion.jhms JAR.  MODULE is either the name of a hybrid module, or an ID\n" +
-                         "of the form NAME@VERSION.\n");
+                         "of the form NAME@VERSION.\n" +
+                         "\n" +
+                         "The hybrid modules in the module image META-INF/mod.image in FATJAR, if any, are\n" +
+                         "also observable, see no.ion.jhms.ImageMain.\n");
         System.exit(0);
     }
 
@@ -0,0 +1,58 @@
+package no.ion.jhms;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static no.ion.jhms.ExceptionUtil.uncheck;
+
+/** What identifies the content of a file: If any of these changes, the file has (likely) been modified. */
+class FileIdentity {
+    private final long size;
+    private final long modifiedNanos;
+    private final String fileKey;
+
+    static FileIdentity of(Path path) {
+        BasicFileAttributes attributes = uncheck(() -> Files.readAttributes(path, BasicFileAttributes.class));
+        // On Linux, the file key contains the device ID and i-node.
+        Object fileKey = attributes.fileKey();
+        return new FileIdentity(attributes.size(),
+                                attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                                fileKey == null ? "" : fileKey.toString());
+    }
+
+    FileIdentity(long size, long modifiedNanos, String fileKey) {
+        this.size = size;
+        this.modifiedNanos = modifiedNanos;
+        this.fileKey = fileKey;
+    }
+
+    /** Whether the identity includes a file key, without which two different files may have the same identity. */
+    boolean hasFileKey() { return !fileKey.isEmpty(); }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(size);
+        out.writeLong(modifiedNanos);
+        out.writeUTF(fileKey);
+    }
+
+    static FileIdentity read(DataInputStream in) throws IOException {
+        return new FileIdentity(in.readLong(), in.readLong(), in.readUTF());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FileIdentity that = (FileIdentity) o;
+        return size == that.size && modifiedNanos == that.modifiedNanos && fileKey.equals(that.fileKey);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(size, modifiedNanos, fileKey); }
+}
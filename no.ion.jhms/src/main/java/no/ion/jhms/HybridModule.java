@@ -13,7 +13,11 @@ class HybridModule extends BaseModule {
     private final List<HybridModule> hybridReadClosure;
     private final HashMap<String, Boolean> transitiveByRequires;
 
-    private HybridModuleClassLoader classLoader;
+    /** The class loader, which is created on first use with lazy class loaders, see {@link #getClassLoader()}. */
+    private volatile HybridModuleClassLoader classLoader = null;
+
+    /** The builder creating the class loader, or null once created. */
+    private Builder classLoaderBuilder = null;
 
     private HybridModule(HybridModuleJar jar,
                          Set<String> packages,
@@ -42,9 +46,40 @@ class HybridModule extends BaseModule {
     List<HybridModule> hybridReads() { return hybridReads; }
     List<HybridModule> hybridReadClosure() { return hybridReadClosure; }
 
+    HybridModuleJar jar() { return jar; }
+
     Optional<String> getMainClass() { return jar.descriptor().mainClass(); }
 
-    HybridModuleClassLoader getClassLoader() { return classLoader; }
+    /** Returns the class loader, creating it if necessary. */
+    HybridModuleClassLoader getClassLoader() {
+        HybridModuleClassLoader classLoader = this.classLoader;
+        if (classLoader == null) {
+            synchronized (this) {
+                classLoader = this.classLoader;
+                if (classLoader == null) {
+                    classLoader = classLoaderBuilder.buildClassLoader(this);
+                    this.classLoader = classLoader;
+                    classLoaderBuilder = null;
+                }
+            }
+        }
+
+        return classLoader;
+    }
+
+    /** Whether the class loader has been created, see {@link HybridModuleContainer.Params#lazyClassLoaders(boolean)}. */
+    boolean hasClassLoader() { return classLoader != null; }
+
+    /** Returns the hybrid module owning each package visible to this hybrid module, without creating the class loader. */
+    TreeMap<String, HybridModule> hybridModulesByPackage() {
+        var hybridModulesByPackage = new TreeMap<String, HybridModule>();
+        // The packages of this hybrid module take precedence, like in the class loader.
+        packagesVisibleTo(this).forEach(packageName -> hybridModulesByPackage.put(packageName, this));
+        for (var hybridModule : hybridReads) {
+            hybridModule.packagesVisibleTo(this).forEach(packageName -> hybridModulesByPackage.putIfAbsent(packageName, hybridModule));
+        }
+        return hybridModulesByPackage;
+    }
 
     void fillModuleGraph(ModuleGraph graph) {
         graph.markAsRootHybridModule(id);
@@ -67,6 +102,11 @@ class HybridModule extends BaseModule {
 
     static class Builder {
         private final HybridModuleJar jar;
+        private final HybridModuleContainer.Params params;
+        private final SharedPackageIndex platformPackages;
+        private final SharedPackageIndex hybridPackages;
+        private final ClassLoadProfile classLoadProfile;
+        private final TransformedClassCache transformedClassCache;
         private final Set<String> packages = new HashSet<>();
         private final Set<String> requiresNames = new HashSet<>();
         private final Map<String, PlatformModule> platformReads = new HashMap<>();
@@ -76,8 +116,24 @@ class HybridModule extends BaseModule {
         private final Map<String, Set<String>> exports = new HashMap<>();
         private final HashMap<String, Boolean> transitiveByRequires = new HashMap<>();
 
-        Builder(HybridModuleJar jar) {
+        /**
+         * @param platformPackages the index the platform modules are registered in
+         * @param hybridPackages   the index the built hybrid module is registered in, with the hybrid modules it reads
+         * @param classLoadProfile the profile the class loader records the classes it defines in, or null
+         * @param transformedClassCache the cache of the classes transformed by the class loader, or null
+         */
+        Builder(HybridModuleJar jar,
+                HybridModuleContainer.Params params,
+                SharedPackageIndex platformPackages,
+                SharedPackageIndex hybridPackages,
+                ClassLoadProfile classLoadProfile,
+                TransformedClassCache transformedClassCache) {
             this.jar = jar;
+            this.params = params;
+            this.platformPackages = platformPackages;
+            this.hybridPackages = hybridPackages;
+            this.classLoadProfile = classLoadProfile;
+            this.transformedClassCache = transformedClassCache;
         }
 
         void setPackages(Set<String> packages) {
@@ -118,6 +174,12 @@ class HybridModule extends BaseModule {
             exports.put(packageName, friends);
         }
 
+        /**
+         * Build the hybrid module. Its class loader is created when first needed with lazy class loaders, and
+         * otherwise right away.
+         *
+         * @throws InvalidHybridModuleException if two modules read by the hybrid module export the same package to it
+         */
         HybridModule build() {
             HybridModule module = new HybridModule(
                     jar,
@@ -130,8 +192,20 @@ class HybridModule extends BaseModule {
                     transitiveByRequires);
 
             // The hybrid module has a reference to the class loader, and vice versa, which complicates construction.
+            module.classLoaderBuilder = this;
 
-            TreeMap<String, PlatformModule> platformModuleByPackage = new TreeMap<>();
+            // Also with lazy class loaders, so that resolve() fails rather than the first use of the class loader.
+            checkVisiblePackages(module);
+            if (!params.lazyClassLoaders()) {
+                module.getClassLoader();
+            }
+
+            hybridPackages.register(module, module.unqualifiedExports());
+            return module;
+        }
+
+        private void checkVisiblePackages(HybridModule module) {
+            HashMap<String, PlatformModule> platformModuleByPackage = new HashMap<>();
             for (var platformModule : platformReads.values()) {
                 for (var packageName : platformModule.packagesVisibleTo(module)) {
                     PlatformModule previousOwner = platformModuleByPackage.put(packageName, platformModule);
@@ -144,7 +218,7 @@ class HybridModule extends BaseModule {
                 }
             }
 
-            TreeMap<String, HybridModule> hybridModuleByPackage = new TreeMap<>();
+            HashMap<String, HybridModule> hybridModuleByPackage = new HashMap<>();
             for (var hybridModule : hybridReads.values()) {
                 for (var packageName : hybridModule.packagesVisibleTo(module)) {
                     PlatformModule previousPlatformOwner = platformModuleByPackage.get(packageName);
@@ -162,21 +236,42 @@ class HybridModule extends BaseModule {
                     }
                 }
             }
+        }
 
-            HybridModuleClassLoader classLoader = new HybridModuleClassLoader(jar,
-                                                                              module,
-                                                                              hybridModuleByPackage,
-                                                                              platformModuleByPackage,
-                                                                              exports);
-
-            module.setHybridModuleClassLoader(classLoader);
+        private HybridModuleClassLoader buildClassLoader(HybridModule module) {
+            // The packages of the hybrid module and the qualified exports to it are kept per hybrid module, while
+            // the packages exported to all modules are looked up in the shared indices.
+            var privatePackages = new HashMap<String, BaseModule>();
+            packages.forEach(packageName -> privatePackages.put(packageName, module));
+            for (var hybridModule : hybridReads.values()) {
+                if (hybridModule != module) {
+                    hybridModule.qualifiedExportsTo(module).forEach(packageName -> privatePackages.put(packageName, hybridModule));
+                }
+            }
 
-            return module;
+            var visiblePackages = new VisiblePackages(privatePackages,
+                                                      platformPackages,
+                                                      platformReads.values(),
+                                                      hybridPackages,
+                                                      module.hybridReads().stream().filter(hybridModule -> hybridModule != module).collect(Collectors.toList()));
+
+            List<ClassTransformer> transformers = params.classTransformers(jar.descriptor().name());
+            ClassTransformation classTransformation = transformers.isEmpty() ?
+                    null :
+                    new ClassTransformation(jar, transformers, transformedClassCache);
+
+            return new HybridModuleClassLoader(jar,
+                                               module,
+                                               visiblePackages,
+                                               exports,
+                                               new NegativeClassCache(params.negativeClassCacheSize(),
+                                                                      params.stacklessClassNotFoundExceptions()),
+                                               params.classLoadingLock(),
+                                               classLoadProfile,
+                                               classTransformation);
         }
     }
 
-    private void setHybridModuleClassLoader(HybridModuleClassLoader classLoader) { this.classLoader = classLoader; }
-
     private void fillModuleGraph2(ModuleGraph graph) {
         if (graph.containsHybridModule(id) || !graph.hybridModuleInUniverse(id)) {
             return;
@@ -6,6 +6,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.security.ProtectionDomain;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
@@ -13,8 +15,8 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
-
-import static no.ion.jhms.PackageUtil.getPackageName;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /** Class loader responsible for loading classes from a modular JAR. */
 public class HybridModuleClassLoader extends ClassLoader {
@@ -28,18 +30,43 @@ public class HybridModuleClassLoader extends ClassLoader {
     private final HybridModule hybridModule;
 
     /** The packages exported by this module. */
-    private final Map<String, Set<String>> exports = new TreeMap<>();
+    private final PackageIndex<Set<String>> exports;
+
+    /**
+     * The owner of each package visible to internal code, either a {@link PlatformModule} or a {@link HybridModule}
+     * (including transient dependencies of the required hybrid modules).
+     */
+    private final VisiblePackages modulesByPackage;
 
-    /** All packages visible to internal code including transient dependencies of the required hybrid modules. */
-    private final TreeMap<String, HybridModule> hybridModulesByPackage;
+    /**
+     * The classes loaded by {@link #loadClass(String, boolean)} or defined by this class loader, by name.
+     * Allows returning an already loaded class without locking.
+     */
+    private final ConcurrentHashMap<String, Class<?>> loadedClasses = new ConcurrentHashMap<>();
 
-    private final TreeMap<String, PlatformModule> platformModulesByPackage;
+    /** The classes known to be absent from {@link #loadClass(String, boolean)}. */
+    private final NegativeClassCache negativeClassCache;
+
+    /**
+     * The lock of each class name being defined, or null if synchronizing on {@link #getClassLoadingLock(String)}.
+     * A lock is removed when no thread holds or waits for it, so the map does not grow with the names requested.
+     */
+    private final ConcurrentHashMap<String, NameLock> reentrantLocks;
+
+    /** The profile to record the classes defined by this class loader in, or null. */
+    private final ClassLoadProfile classLoadProfile;
+
+    /** The transformation of the classes before they are defined, or null. */
+    private final ClassTransformation classTransformation;
 
     HybridModuleClassLoader(HybridModuleJar jar,
                             HybridModule hybridModule,
-                            TreeMap<String, HybridModule> hybridModulesByPackage,
-                            TreeMap<String, PlatformModule> platformModulesByPackage,
-                            Map<String, Set<String>> exports) {
+                            VisiblePackages modulesByPackage,
+                            Map<String, Set<String>> exports,
+                            NegativeClassCache negativeClassCache,
+                            HybridModuleContainer.Params.ClassLoadingLock classLoadingLock,
+                            ClassLoadProfile classLoadProfile,
+                            ClassTransformation classTransformation) {
         super(jar.hybridModuleId().toString(),
                 // The platform class loader should observe classes exactly 1:1 with the ModuleFinder.ofSystem()
                 // used to find modules not provided by the application, see HybridModuleFinder. It's not
@@ -47,18 +74,39 @@ public class HybridModuleClassLoader extends ClassLoader {
                 ClassLoader.getPlatformClassLoader());
         this.jar = jar;
         this.hybridModule = hybridModule;
-        this.hybridModulesByPackage = hybridModulesByPackage;
-        this.platformModulesByPackage = platformModulesByPackage;
-
-        this.exports.putAll(exports);
+        this.modulesByPackage = modulesByPackage;
+        this.exports = PackageIndex.of(exports);
+        this.negativeClassCache = negativeClassCache;
+        this.reentrantLocks = classLoadingLock == HybridModuleContainer.Params.ClassLoadingLock.REENTRANT_LOCK ?
+                new ConcurrentHashMap<>() :
+                null;
+        this.classLoadProfile = classLoadProfile;
+        this.classTransformation = classTransformation;
     }
 
+    /** Returns the counters of the cache of class names known to be absent from this class loader. */
+    public CacheCounters negativeClassCacheCounters() { return negativeClassCache.counters(); }
+
+    HybridModuleJar jar() { return jar; }
+
+    VisiblePackages visiblePackages() { return modulesByPackage; }
+
     TreeMap<String, HybridModule> hybridModulesByPackage() {
-        return new TreeMap<>(hybridModulesByPackage);
+        return modulesByPackage(HybridModule.class);
     }
 
     TreeMap<String, PlatformModule> platformModulesByPackage() {
-        return new TreeMap<>(platformModulesByPackage);
+        return modulesByPackage(PlatformModule.class);
+    }
+
+    private <T extends BaseModule> TreeMap<String, T> modulesByPackage(Class<T> moduleClass) {
+        var modulesByPackage = new TreeMap<String, T>();
+        this.modulesByPackage.toTreeMap().forEach((packageName, module) -> {
+            if (moduleClass.isInstance(module)) {
+                modulesByPackage.put(packageName, moduleClass.cast(module));
+            }
+        });
+        return modulesByPackage;
     }
 
     /**
@@ -71,70 +119,75 @@ public class HybridModuleClassLoader extends ClassLoader {
      * and have access to all readable hybrid modules.
      */
     Class<?> loadExportedClass(String name) throws ClassNotFoundException {
-        String packageName = getPackageName(name);
-        if (!exports.containsKey(packageName)) {
-            throw new ClassNotFoundException(name);
+        if (!exports.containsClassName(name)) {
+            throw negativeClassCache.newException(name);
         }
 
-        synchronized (getClassLoadingLock(name)) {
-            // The documentation says this will cache only if this class was the initiating class loader,
-            // but a test verified my suspicion that it also caches if this class is the defining class loader.
-            Class<?> klass = findLoadedClass(name);
-            if (klass == null) {
-                klass = defineClassInJar(name);
-                if (klass == null) {
-                    throw new ClassNotFoundException(name);
-                }
-            }
-
-            return klass;
+        // The package is owned by this module, so any class by that name in loadedClasses was defined by this loader.
+        Class<?> klass = loadedClasses.get(name);
+        if (klass == null) {
+            klass = defineClassLocked(name);
         }
+
+        return klass;
     }
 
     @Override
     protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
-        synchronized (getClassLoadingLock(name)) {
-            Class<?> c = loadClassUnlocked(name);
+        // Fast path without any locking.
+        Class<?> c = loadedClasses.get(name);
+        if (c == null) {
+            negativeClassCache.throwIfAbsent(name);
 
-            if (resolve) {
-                resolveClass(c);
+            try {
+                c = loadNewClass(name);
+            } catch (ClassNotFoundException e) {
+                negativeClassCache.add(name, e);
+                throw e;
             }
 
-            return c;
+            loadedClasses.putIfAbsent(name, c);
         }
+
+        if (resolve) {
+            resolveClass(c);
+        }
+
+        return c;
     }
 
     @Override
     public Enumeration<URL> findResources(String absoluteName) {
         try {
-            return Collections.enumeration(List.of(getResource(absoluteName)));
+            URL url = getResource(absoluteName);
+            if (url != null) {
+                return Collections.enumeration(List.of(url));
+            }
         } catch (UncheckedIOException e) {}
-        return Collections.enumeration(List.of());
+        return Collections.emptyEnumeration();
     }
 
     @Override
     public InputStream getResourceAsStream(String absoluteName) {
-        Optional<String> packageName = PackageUtil.getPackageNameFromAbsoluteNameOfResource(absoluteName);
-
-        if (packageName.isPresent()) {
-            PlatformModule platformModule = platformModulesByPackage.get(packageName.get());
-            if (platformModule != null) {
-                return platformModule.getResourceAsStream(absoluteName);
-            }
+        BaseModule owner = getResourceOwner(absoluteName);
+        if (owner instanceof PlatformModule) {
+            return ((PlatformModule) owner).getResourceAsStream(absoluteName);
         }
 
-        return packageName
-                .map(name -> hybridModulesByPackage.getOrDefault(name, hybridModule))
-                .orElse(hybridModule)
-                // This works as intended even if 'getClassLoader() == this'.
-                .getClassLoader()
-                .jar
+        // Reads the JAR of the owner without creating its class loader, which may not exist with lazy class loaders.
+        return ((HybridModule) owner).jar()
                 .getResourceAsStream(absoluteName)
                 .orElse(null);
     }
 
     @Override
     public URL getResource(String name) {
+        BaseModule owner = getResourceOwner(name);
+        if (owner instanceof HybridModule && !((HybridModule) owner).jar().hasEntry(name)) {
+            // Answer a miss without I/O, and as the ClassLoader contract expects.
+            return null;
+        }
+
         try {
             return new URL("jhms", null, 0, "/" + hybridModule.id().toString() + "/" + name, new URLStreamHandler() {
                 @Override
@@ -151,16 +204,24 @@ public class HybridModuleClassLoader extends ClassLoader {
         }
     }
 
-    private Class<?> loadClassUnlocked(String name) throws ClassNotFoundException {
-        // If the class has already been loaded.
-        Class<?> c = findLoadedClass(name);
-        if (c != null) {
-            return c;
-        }
+    /** Returns the module owning the resource, which is this hybrid module if the package is not visible. */
+    private BaseModule getResourceOwner(String absoluteName) {
+        Optional<String> packageName = PackageUtil.getPackageNameFromAbsoluteNameOfResource(absoluteName);
+        BaseModule owner = packageName.map(modulesByPackage::get).orElse(null);
+        return owner == null ? hybridModule : owner;
+    }
 
+    /**
+     * Load a class not in {@link #loadedClasses}.
+     *
+     * <p>The class loading lock is only taken when defining a class in this hybrid module. In particular, the lock is
+     * NOT held while delegating to the platform class loader or the class loader of another hybrid module, which
+     * takes its own lock if needed.</p>
+     */
+    private Class<?> loadNewClass(String name) throws ClassNotFoundException {
         // If the class is in a readable platform module package
-        String packageName = getPackageName(name);
-        if (platformModulesByPackage.containsKey(packageName)) {
+        BaseModule owner = modulesByPackage.getByClassName(name);
+        if (owner instanceof PlatformModule) {
             return getParent().loadClass(name);
         }
 
@@ -172,16 +233,17 @@ public class HybridModuleClassLoader extends ClassLoader {
         }
 
         // If the class is in a readable hybrid module package
-        HybridModule hybridModule = hybridModulesByPackage.get(packageName);
-        if (hybridModule != null) {
-            if (hybridModule.getClassLoader() == this) {
-                return defineClassInJar(name);
+        if (owner != null) {
+            HybridModule hybridModule = (HybridModule) owner;
+            if (hybridModule == this.hybridModule) {
+                return defineClassLocked(name);
             } else {
+                // With lazy class loaders, this may create the class loader of the hybrid module.
                 return hybridModule.getClassLoader().loadExportedClass(name);
             }
         }
 
-        throw new ClassNotFoundException(name + ": its package is not exported by any module read by hybrid module " + this.hybridModule.id());
+        throw negativeClassCache.newException(name + ": its package is not exported by any module read by hybrid module " + this.hybridModule.id());
     }
 
     /**
@@ -215,12 +277,74 @@ public class HybridModuleClassLoader extends ClassLoader {
                className.equals("org.jcp.xml.dsig.internal.dom.XMLDSigRI");
     }
 
+    /** Define the class in this hybrid module, unless already defined by a concurrent call. */
+    private Class<?> defineClassLocked(String name) throws ClassNotFoundException {
+        if (reentrantLocks == null) {
+            synchronized (getClassLoadingLock(name)) {
+                return defineClassIfNotLoaded(name);
+            }
+        }
+
+        // A lock per class name rather than striped locks: Defining a class may recursively load its superclass
+        // while holding the lock, and two threads defining classes whose names share stripes could deadlock.
+        NameLock lock = reentrantLocks.compute(name, (key, current) -> {
+            NameLock nameLock = current == null ? new NameLock() : current;
+            ++nameLock.users;
+            return nameLock;
+        });
+
+        try {
+            lock.lock();
+            try {
+                return defineClassIfNotLoaded(name);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            reentrantLocks.computeIfPresent(name, (key, current) -> --current.users == 0 ? null : current);
+        }
+    }
+
+    /** The number of class names with a lock, see {@link #reentrantLocks}. */
+    int reentrantLockCount() { return reentrantLocks == null ? 0 : reentrantLocks.size(); }
+
+    /** A lock of a class name, with the number of threads holding or waiting for it. */
+    private static class NameLock extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        /** Only read and written within a compute of {@link #reentrantLocks} for the class name. */
+        private int users = 0;
+    }
+
+    /** Must be called with the class loading lock of the class held. */
+    private Class<?> defineClassIfNotLoaded(String name) throws ClassNotFoundException {
+        // The documentation says this will cache only if this class was the initiating class loader,
+        // but a test verified my suspicion that it also caches if this class is the defining class loader.
+        Class<?> klass = findLoadedClass(name);
+        if (klass == null) {
+            klass = defineClassInJar(name);
+            loadedClasses.put(name, klass);
+            if (classLoadProfile != null) {
+                classLoadProfile.record(hybridModule.id(), name);
+            }
+        }
+
+        return klass;
+    }
+
     private Class<?> defineClassInJar(String name) throws ClassNotFoundException {
-        byte[] bytes = jar.getClassBytes(name);
+        ByteBuffer bytes = jar.getClassBytes(name);
         if (bytes == null) {
-            throw new ClassNotFoundException(name);
+            throw negativeClassCache.newException(name);
+        }
+
+        if (classTransformation != null) {
+            bytes = classTransformation.transform(name, bytes);
         }
 
-        return defineClass(name, bytes, 0, bytes.length);
+        // A dynamic CDS archive (-XX:ArchiveClassesAtExit) includes the classes of hybrid modules. With
+        // -XX:SharedArchiveFile, the archived class is used instead of parsing the bytes, if the class loader
+        // defines a class by the same name with bytes of the same size and CRC32, see javahms --cds-archive.
+        return defineClass(name, bytes, (ProtectionDomain) null);
     }
 }
@@ -1,20 +1,29 @@
 package no.ion.jhms;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.lang.module.FindException;
 import java.lang.module.ModuleDescriptor;
+import java.lang.module.ResolutionException;
 import java.net.JarURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.net.URLConnection;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,17 +32,216 @@ import static java.util.Objects.requireNonNull;
 import static no.ion.jhms.ExceptionUtil.uncheck;
 
 public class HybridModuleContainer implements AutoCloseable {
+    /** The number of consecutive classes of a profile loaded by one thread, see {@link #replayClassLoadProfile(Path, int)}. */
+    static final int REPLAY_CHUNK_SIZE = 64;
+
+    private final Params params;
     private final PlatformModuleContainer platformModuleContainer;
+
+    /** The classes defined by the hybrid module class loaders, or null if not recording. */
+    private final ClassLoadProfile classLoadProfile;
+    private final TransformedClassCache transformedClassCache;
     private final ObservableHybridModules observableHybridModules;
-    private final TreeMap<HybridModuleId, HybridModule> hybridModules = new TreeMap<>();
-    private final Set<HybridModuleId> roots = new HashSet<>();
 
-    // As soon as the resolution of a hybrid module starts, it is added here to detect cycles.
-    private final Set<HybridModuleId> startedResolutions = new HashSet<>();
+    // The resolved hybrid modules, which are read without locking.
+    private final ConcurrentSkipListMap<HybridModuleId, HybridModule> hybridModules = new ConcurrentSkipListMap<>();
+    private final Set<HybridModuleId> roots = ConcurrentHashMap.newKeySet();
+
+    // The packages exported to all modules by the resolved hybrid modules.
+    private final SharedPackageIndex hybridPackageIndex = new SharedPackageIndex();
+
+    // As soon as the resolution of a hybrid module starts, it is added here until resolved or failed. Another thread
+    // needing the hybrid module waits for the resolution, instead of resolving it again.
+    private final ConcurrentHashMap<HybridModuleId, Resolution> resolutions = new ConcurrentHashMap<>();
+
+    // The resolution each thread is waiting for, to detect cyclic dependencies spanning several threads.
+    // Guarded by itself.
+    private final HashMap<Thread, Resolution> waitingFor = new HashMap<>();
+
+    /** Parameters of the container, e.g. affecting the class loaders of the hybrid modules. */
+    public static class Params {
+        private int negativeClassCacheSize = 1024;
+        private boolean stacklessClassNotFoundExceptions = false;
+        private ClassLoadingLock classLoadingLock = ClassLoadingLock.MONITOR;
+        private Optional<Path> descriptorCache = Optional.empty();
+        private int discoveryParallelism = 1;
+        private OpenJarPool openJarPool = null;
+        private Optional<Path> checksumCache = Optional.empty();
+        private Optional<Path> classBytesCache = Optional.empty();
+        private boolean lazyClassLoaders = false;
+        private Optional<Path> classLoadProfile = Optional.empty();
+        private final Map<String, List<ClassTransformer>> classTransformers = new HashMap<>();
+        private Optional<Path> transformedClassCache = Optional.empty();
+
+        /** The kind of lock a hybrid module class loader holds while defining a class. */
+        public enum ClassLoadingLock {
+            /** Synchronize on {@link ClassLoader#getClassLoadingLock(String) getClassLoadingLock()}. */
+            MONITOR,
+
+            /**
+             * Use a {@link java.util.concurrent.locks.ReentrantLock ReentrantLock} per class name being defined, which
+             * is removed when no thread holds or waits for it. A virtual thread waiting for the lock does not pin
+             * its carrier thread, unless it waits from within the definition of another class, e.g. for its
+             * superclass: The native frame of defineClass pins the carrier thread regardless of the lock.
+             */
+            REENTRANT_LOCK
+        }
+
+        /**
+         * The maximum number of names of classes known to be absent, that each hybrid module class loader remembers
+         * to fail repeated lookups fast. When full, the cache is cleared. 0 disables the cache. The default is 1024.
+         */
+        public Params negativeClassCacheSize(int negativeClassCacheSize) {
+            if (negativeClassCacheSize < 0) {
+                throw new IllegalArgumentException("negativeClassCacheSize cannot be negative: " + negativeClassCacheSize);
+            }
+            this.negativeClassCacheSize = negativeClassCacheSize;
+            return this;
+        }
+
+        /**
+         * Whether the hybrid module class loaders should throw {@link ClassNotFoundException} without a stack trace,
+         * which makes them cheap to create.  The default is false.
+         */
+        public Params stacklessClassNotFoundExceptions(boolean stacklessClassNotFoundExceptions) {
+            this.stacklessClassNotFoundExceptions = stacklessClassNotFoundExceptions;
+            return this;
+        }
+
+        /** The lock held while defining a class. The default is {@link ClassLoadingLock#MONITOR}. */
+        public Params classLoadingLock(ClassLoadingLock classLoadingLock) {
+            this.classLoadingLock = requireNonNull(classLoadingLock);
+            return this;
+        }
+
+        /**
+         * Cache what is read from each discovered hybrid modular JAR in the given file, the module descriptor and
+         * the set of packages, and reuse it on later starts if the JAR is unchanged (same path, size, modification
+         * time, device, and i-node). By default there is no cache.
+         */
+        public Params descriptorCache(Path file) {
+            this.descriptorCache = Optional.of(file);
+            return this;
+        }
+
+        /**
+         * The number of hybrid modular JARs to open and read concurrently when discovering hybrid modules. The
+         * observable hybrid modules, and any {@link FindException}, are the same as when reading one JAR at a
+         * time. The default is 1.
+         */
+        public Params discoveryParallelism(int discoveryParallelism) {
+            if (discoveryParallelism < 1) {
+                throw new IllegalArgumentException("discoveryParallelism must be positive: " + discoveryParallelism);
+            }
+            this.discoveryParallelism = discoveryParallelism;
+            return this;
+        }
+
+        /**
+         * Limit the number of hybrid modular JARs read with a module reader, e.g. multi-release JARs, with the pool,
+         * which may be shared with other containers. The least recently used JARs are closed, and opened again when
+         * needed. Memory-mapped JARs keep no file open, and are not limited. By default there is no limit.
+         */
+        public Params openJarPool(OpenJarPool openJarPool) {
+            this.openJarPool = requireNonNull(openJarPool);
+            return this;
+        }
+
+        /**
+         * Cache the SHA-256 checksums of hybrid modular JARs in the given file, and reuse them on later starts if the
+         * JAR is unchanged (same device, i-node, size, and modification time). The checksums are used to verify that
+         * two JARs claiming the same hybrid module ID are equal. By default there is no cache.
+         */
+        public Params checksumCache(Path file) {
+            this.checksumCache = Optional.of(file);
+            return this;
+        }
+
+        /**
+         * Cache the uncompressed entries of hybrid modular JARs in the given directory, in a file per JAR named by its
+         * SHA-256 checksum. On later starts, the classes of an unchanged JAR are defined from the mapped file instead
+         * of being inflated. The checksum of each opened JAR is needed, and should be cached as well with
+         * {@link #checksumCache(Path)}. By default there is no cache.
+         */
+        public Params classBytesCache(Path directory) {
+            this.classBytesCache = Optional.of(directory);
+            return this;
+        }
+
+        /**
+         * Whether to create the class loader of a hybrid module only when one of its classes is first loaded. Only
+         * the class loader, with its package index, is deferred:
+         * {@link HybridModuleContainer#resolve(ResolveParams) resolve()} still creates every hybrid module of the
+         * graph, computes its read closure, checks the packages visible to it, and registers its exported packages,
+         * and fails as before if a hybrid module is missing, there is a cycle, or two readable modules export the
+         * same package to a hybrid module. {@link HybridModuleContainer#moduleGraph2(GraphParams)} does not create
+         * class loaders, while {@link HybridModuleContainer#replayClassLoadProfile(Path, int)} creates those of the
+         * hybrid modules with recorded classes. The default is false.
+         */
+        public Params lazyClassLoaders(boolean lazyClassLoaders) {
+            this.lazyClassLoaders = lazyClassLoaders;
+            return this;
+        }
+
+        /**
+         * Record the classes defined by the hybrid module class loaders, in order, and write them to the given file
+         * on {@link #saveClassLoadProfile()} and {@link #close()}. The profile of such a training run can be replayed
+         * on later starts with {@link #replayClassLoadProfile(Path, int)}. By default nothing is recorded.
+         */
+        public Params recordClassLoadProfile(Path file) {
+            this.classLoadProfile = Optional.of(file);
+            return this;
+        }
+
+        /**
+         * Transform the classes of the hybrid modules with the given name, of any version, with the transformer before
+         * they are defined. The transformers of a hybrid module run in the order they were added. The classes of
+         * other hybrid modules are defined as before, without any overhead.
+         */
+        public Params addClassTransformer(String hybridModuleName, ClassTransformer transformer) {
+            requireNonNull(transformer, "transformer cannot be null");
+            classTransformers.computeIfAbsent(hybridModuleName, name -> new ArrayList<>()).add(transformer);
+            return this;
+        }
+
+        /**
+         * Cache the classes transformed by the transformers added with {@link #addClassTransformer(String,
+         * ClassTransformer)} in the given directory, keyed by the SHA-256 checksum of the JAR and the
+         * {@link ClassTransformer#version() versions} of the transformers. On later starts, the transformed bytes of
+         * an unchanged JAR are read from the cache instead of transforming the class again. The classes transformed
+         * are written to the cache when the container is closed, or by
+         * {@link HybridModuleContainer#saveTransformedClasses()}. The checksum of each transformed JAR is needed, and
+         * should be cached as well with {@link #checksumCache(Path)}. By default there is no cache.
+         */
+        public Params transformedClassCache(Path directory) {
+            this.transformedClassCache = Optional.of(directory);
+            return this;
+        }
+
+        int negativeClassCacheSize() { return negativeClassCacheSize; }
+        boolean stacklessClassNotFoundExceptions() { return stacklessClassNotFoundExceptions; }
+        ClassLoadingLock classLoadingLock() { return classLoadingLock; }
+        Optional<Path> descriptorCache() { return descriptorCache; }
+        int discoveryParallelism() { return discoveryParallelism; }
+        Optional<OpenJarPool> openJarPool() { return Optional.ofNullable(openJarPool); }
+        Optional<Path> checksumCache() { return checksumCache; }
+        Optional<Path> classBytesCache() { return classBytesCache; }
+        boolean lazyClassLoaders() { return lazyClassLoaders; }
+        Optional<Path> classLoadProfile() { return classLoadProfile; }
+        List<ClassTransformer> classTransformers(String hybridModuleName) { return classTransformers.getOrDefault(hybridModuleName, List.of()); }
+        Optional<Path> transformedClassCache() { return transformedClassCache; }
+    }
 
     public HybridModuleContainer() {
-        this.platformModuleContainer = new PlatformModuleContainer();
-        this.observableHybridModules = new ObservableHybridModules();
+        this(new Params());
+    }
+
+    public HybridModuleContainer(Params params) {
+        this.params = requireNonNull(params);
+        this.platformModuleContainer = PlatformModuleContainer.shared();
+        this.observableHybridModules = new ObservableHybridModules(params);
+        this.classLoadProfile = params.classLoadProfile().isPresent() ? new ClassLoadProfile() : null;
+        this.transformedClassCache = params.transformedClassCache().map(TransformedClassCache::new).orElse(null);
     }
 
     /**
@@ -53,44 +261,136 @@ public class HybridModuleContainer implements AutoCloseable {
     public void discoverHybridModules(List<Path> paths) { observableHybridModules.discoverHybridModules(paths); }
 
     /**
-     * Make all modular JARs and exploded modules in the current class loader's META-INF/mod/ directory observable.
+     * Make all hybrid modules in the module image file observable. The image is created from a module path with
+     * {@link ImageMain}, and is mapped: Only its header is read, and the class bytes are read straight from the
+     * mapping.
+     *
+     * @throws FindException if e.g. two hybrid modular JAR are found with for the same hybrid module name and version.
+     * @throws java.io.UncheckedIOException
+     * @throws InvalidHybridModuleException if the file is not a valid module image
+     */
+    public void discoverHybridModulesInImage(Path image) { observableHybridModules.addHybridModules(ModuleImage.open(image).jars()); }
+
+    /**
+     * Make all modular JARs and exploded modules in the current class loader's META-INF/mod/ directory observable,
+     * and all hybrid modules in the module images named META-INF/mod.image.
+     *
+     * <p>A module image in a JAR is used in place if it is STORED (uncompressed), see {@code jar --no-compress}.</p>
      */
-    public void discoverEmbeddedHybridModules() {
-        getClass().getClassLoader()
-                  .resources("META-INF/mod/")
-                  .forEach(url -> {
-                      if (Objects.equals(url.getProtocol(), "file")) {
-                          String path = requireNonNull(url.getPath(), "Empty path of file url: " + url);
-                          discoverHybridModules(path);
-                      } else if (Objects.equals(url.getProtocol(), "jar")) {
-                          String urlPath = url.getPath();
-                          int separatorIndex = urlPath.indexOf("!/");
-                          if (separatorIndex == -1)
-                              throw new IllegalArgumentException("Invalid JAR URL: Missing separator: " + url);
-                          String jarFileUrlString = urlPath.substring(0, separatorIndex);
-                          URI jarFileUri = URI.create(jarFileUrlString);
-                          String entryPath = urlPath.substring(separatorIndex + 2);
-                          if (!Objects.equals("jar:" + jarFileUri + "!/" + entryPath, url.toString()))
-                              throw new IllegalArgumentException("Invalid JAR URL: " + url.toString());
-
-                          final URI uri;
-                          try {
-                              uri = url.toURI();
-                          } catch (URISyntaxException e) {
-                              throw new IllegalArgumentException("Invalid URI: " + url, e);
-                          }
-                          FileSystem fileSystem = uncheck(() -> FileSystems.newFileSystem(uri, Map.of()));
-                          try {
-                              Path modDirectory = fileSystem.getPath(entryPath);
-                              discoverHybridModules(modDirectory);
-                          } finally {
-                              uncheck(fileSystem::close);
-                          }
-                      } else {
-                          throw new IllegalArgumentException("/META-INF/mod/ resource in the " + getClass().getClassLoader() +
-                                                             " class loader is neither a file nor jar");
-                      }
-                  });
+    public void discoverEmbeddedHybridModules() { discoverEmbeddedHybridModules(getClass().getClassLoader()); }
+
+    /** As {@link #discoverEmbeddedHybridModules()}, with the resources of the given class loader, e.g. in tests. */
+    void discoverEmbeddedHybridModules(ClassLoader classLoader) {
+        classLoader.resources("META-INF/mod.image")
+                   .forEach(url -> observableHybridModules.addHybridModules(embeddedModuleImage(url).jars()));
+
+        classLoader.resources("META-INF/mod/")
+                   .forEach(url -> {
+                       if (Objects.equals(url.getProtocol(), "file")) {
+                           String path = requireNonNull(url.getPath(), "Empty path of file url: " + url);
+                           discoverHybridModules(path);
+                       } else if (Objects.equals(url.getProtocol(), "jar")) {
+                           String urlPath = url.getPath();
+                           int separatorIndex = urlPath.indexOf("!/");
+                           if (separatorIndex == -1)
+                               throw new IllegalArgumentException("Invalid JAR URL: Missing separator: " + url);
+                           String jarFileUrlString = urlPath.substring(0, separatorIndex);
+                           URI jarFileUri = URI.create(jarFileUrlString);
+                           String entryPath = urlPath.substring(separatorIndex + 2);
+                           if (!Objects.equals("jar:" + jarFileUri + "!/" + entryPath, url.toString()))
+                               throw new IllegalArgumentException("Invalid JAR URL: " + url.toString());
+
+                           observableHybridModules.addHybridModules(openNestedJars(jarFileUri, entryPath));
+                       } else {
+                           throw new IllegalArgumentException("/META-INF/mod/ resource in the " + classLoader +
+                                                              " class loader is neither a file nor jar");
+                       }
+                   });
+    }
+
+    /**
+     * Open the *.jar entries in the directory of the outer JAR file, without extracting them. A STORED nested JAR is
+     * read in place from the mapping of the outer JAR file. A DEFLATED nested JAR cannot be mapped, and is instead
+     * inflated into memory once: Nested JARs should therefore be stored uncompressed, e.g. with jar --no-compress.
+     */
+    private static List<HybridModuleJar> openNestedJars(URI jarFileUri, String directory) {
+        Path jarFilePath = Path.of(jarFileUri);
+        var jars = new ArrayList<HybridModuleJar>();
+
+        Optional<MappedJarFile> mappedJarFile = MappedJarFile.open(jarFilePath);
+        if (mappedJarFile.isPresent()) {
+            for (String name : new TreeSet<>(mappedJarFile.get().entryNames())) {
+                if (isNestedJar(name, directory)) {
+                    jars.add(openNestedJar(mappedJarFile.get().getEntryRetained(name), jarFileUri, name));
+                }
+            }
+            return jars;
+        }
+
+        // E.g. a multi-release fat JAR: Read the nested JARs into memory.
+        try (var jarFile = new JarFile(jarFilePath.toFile())) {
+            List<String> names = jarFile.stream()
+                    .map(ZipEntry::getName)
+                    .filter(name -> isNestedJar(name, directory))
+                    .sorted()
+                    .collect(Collectors.toList());
+            for (String name : names) {
+                try (InputStream in = jarFile.getInputStream(jarFile.getEntry(name))) {
+                    jars.add(openNestedJar(ByteBuffer.wrap(in.readAllBytes()), jarFileUri, name));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return jars;
+    }
+
+    private static boolean isNestedJar(String name, String directory) {
+        return name.startsWith(directory) && name.endsWith(".jar") && name.indexOf('/', directory.length()) == -1;
+    }
+
+    private static HybridModuleJar openNestedJar(ByteBuffer content, URI jarFileUri, String name) {
+        Path path = Path.of(Path.of(jarFileUri) + "!/" + name);
+        MappedJarFile jarFile = MappedJarFile.of(content, path).orElseThrow(() -> new InvalidHybridModuleException(
+                "Nested JAR is not supported, e.g. a multi-release or ZIP64 JAR: " + path));
+        return HybridModuleJar.openNested(jarFile, URI.create("jar:" + jarFileUri + "!/" + name));
+    }
+
+    private static ModuleImage embeddedModuleImage(URL url) {
+        final URI uri;
+        try {
+            uri = url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid URI: " + url, e);
+        }
+
+        if (Objects.equals(url.getProtocol(), "file")) {
+            return ModuleImage.open(Path.of(uri));
+        }
+
+        if (Objects.equals(url.getProtocol(), "jar")) {
+            String urlPath = url.getPath();
+            int separatorIndex = urlPath.indexOf("!/");
+            if (separatorIndex == -1)
+                throw new IllegalArgumentException("Invalid JAR URL: Missing separator: " + url);
+            URI jarFileUri = URI.create(urlPath.substring(0, separatorIndex));
+            String entryPath = urlPath.substring(separatorIndex + 2);
+
+            if (Objects.equals(jarFileUri.getScheme(), "file")) {
+                Optional<MappedJarFile> jarFile = MappedJarFile.open(Path.of(jarFileUri));
+                ByteBuffer image = jarFile.map(mappedJarFile -> mappedJarFile.getEntryRetained(entryPath)).orElse(null);
+                if (image != null) {
+                    return ModuleImage.of(image, Path.of(uri.toString()), uri);
+                }
+            }
+        }
+
+        // E.g. a JAR that cannot be mapped: Read the image into memory.
+        try (InputStream in = url.openStream()) {
+            return ModuleImage.of(ByteBuffer.wrap(in.readAllBytes()), Path.of(uri.toString()), uri);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -104,7 +404,7 @@ public class HybridModuleContainer implements AutoCloseable {
         if (atIndex == -1) {
             // Is presumably a platform module
             BaseModule.validateModuleName(module);
-            return platformModuleContainer.get(module).isPresent();
+            return platformModuleContainer.isObservable(module);
         } else {
             // Is presumably a hybrid module
             HybridModuleId.validateHybridModuleId(module);
@@ -142,12 +442,80 @@ public class HybridModuleContainer implements AutoCloseable {
             this.version = Optional.of(HybridModuleVersion.from(version));
             return this;
         }
+
+        @Override
+        public String toString() {
+            return version.map(version -> new HybridModuleId(moduleName, version).toString()).orElse(moduleName);
+        }
     }
 
+    /**
+     * Resolve the root hybrid module, and the hybrid modules it requires directly or indirectly.
+     *
+     * <p>Several threads may resolve concurrently, e.g. plugins while the container is serving, but not concurrently
+     * with discovering hybrid modules. A hybrid module is resolved only once: A thread needing a hybrid module being
+     * resolved by another thread waits for it, and fails with the same exception if its resolution fails.</p>
+     */
     public RootHybridModule resolve(ResolveParams params) {
         HybridModuleId id = resolveHybridModuleId(params);
-        HybridModule root = resolveHybridModule(id);
-        roots.add(id);
+        return newRoot(resolveHybridModule(id));
+    }
+
+    /**
+     * Resolve several root hybrid modules, e.g. plugins, and return them in the same order.
+     *
+     * <p>The hybrid modules required by the roots are resolved once.</p>
+     *
+     * <p>All roots are attempted even if some fail to resolve. The roots that resolve stay resolved, and the
+     * failures are thrown together, each with the exception {@link #resolve(ResolveParams) resolve()} would throw.</p>
+     *
+     * @throws HybridModuleResolutionException if one or more roots failed to resolve
+     */
+    public List<RootHybridModule> resolveAll(List<ResolveParams> paramsList) {
+        var ids = new ArrayList<HybridModuleId>();
+        var failures = new ArrayList<RuntimeException>();
+        for (var params : paramsList) {
+            try {
+                ids.add(resolveHybridModuleId(params));
+                failures.add(null);
+            } catch (RuntimeException e) {
+                ids.add(null);
+                failures.add(e);
+            }
+        }
+
+        var rootHybridModules = new ArrayList<RootHybridModule>();
+        for (int i = 0; i < paramsList.size(); ++i) {
+            HybridModuleId id = ids.get(i);
+            if (id == null) {
+                continue;
+            }
+
+            try {
+                rootHybridModules.add(newRoot(resolveHybridModule(id)));
+            } catch (RuntimeException e) {
+                failures.set(i, e);
+            }
+        }
+
+        var failuresByRoot = new LinkedHashMap<String, RuntimeException>();
+        for (int i = 0; i < paramsList.size(); ++i) {
+            if (failures.get(i) != null) {
+                failuresByRoot.put(paramsList.get(i).toString(), failures.get(i));
+            }
+        }
+
+        if (!failuresByRoot.isEmpty()) {
+            throw new HybridModuleResolutionException(failuresByRoot);
+        }
+
+        return rootHybridModules;
+    }
+
+    private RootHybridModule newRoot(HybridModule root) {
+        // The class loader of the root is always needed, and errors creating it are reported here.
+        root.getClassLoader();
+        roots.add(root.id());
         // TODO: Maintain a usage counter?
         return new RootHybridModule(root);
     }
@@ -200,8 +568,8 @@ public class HybridModuleContainer implements AutoCloseable {
             for (var hybridModule : hybridModules.values()) {
                 TreeMap<HybridModuleId, List<String>> visiblePackagesByHybridModuleId = null;
                 if (params.includePackageVisibility) {
-                    var classLoader = hybridModule.getClassLoader();
-                    visiblePackagesByHybridModuleId = classLoader.hybridModulesByPackage().entrySet().stream()
+                    // Without creating the class loader, which may not exist with lazy class loaders.
+                    visiblePackagesByHybridModuleId = hybridModule.hybridModulesByPackage().entrySet().stream()
                             .collect(Collectors.groupingBy(entry -> entry.getValue().id()))
                             .entrySet().stream()
                             .collect(Collectors.toMap(
@@ -242,8 +610,95 @@ public class HybridModuleContainer implements AutoCloseable {
         return builder.toString();
     }
 
+    /**
+     * Preload the classes of a class load profile recorded with {@link Params#recordClassLoadProfile(Path)}, e.g.
+     * before or while running the main method of a root hybrid module.
+     *
+     * <p>The classes are loaded, but not initialized, in the recorded order by {@code parallelism} threads: Each
+     * thread takes the next chunk of {@value #REPLAY_CHUNK_SIZE} classes of the profile, and loads them in order, so
+     * a class is typically loaded after the classes recorded before it, e.g. its superclass. Only the classes of
+     * hybrid modules resolved by this container are loaded. A class that fails to load is skipped, and fails again
+     * when the hybrid module loads it. A missing or invalid profile is empty. With lazy class loaders, only the class
+     * loaders of the hybrid modules with recorded classes are created. The threads are stopped when done.</p>
+     *
+     * @return a future completed with the number of classes loaded when all classes have been tried
+     */
+    public CompletableFuture<Integer> replayClassLoadProfile(Path file, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+
+        List<ClassLoadProfile.Entry> entries = ClassLoadProfile.read(file).map(ClassLoadProfile::entries).orElse(List.of());
+        if (entries.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+
+        int threads = Math.min(parallelism, (entries.size() + REPLAY_CHUNK_SIZE - 1) / REPLAY_CHUNK_SIZE);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        var nextChunk = new AtomicInteger(0);
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; ++i) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                int loaded = 0;
+                for (int start; (start = nextChunk.getAndAdd(REPLAY_CHUNK_SIZE)) < entries.size(); ) {
+                    for (var entry : entries.subList(start, Math.min(start + REPLAY_CHUNK_SIZE, entries.size()))) {
+                        if (preload(entry)) {
+                            ++loaded;
+                        }
+                    }
+                }
+                return loaded;
+            }, pool));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> futures.stream().mapToInt(CompletableFuture::join).sum())
+                .whenComplete((count, throwable) -> pool.shutdown());
+    }
+
+    private boolean preload(ClassLoadProfile.Entry entry) {
+        HybridModule hybridModule = hybridModules.get(entry.hybridModuleId());
+        if (hybridModule == null) {
+            return false;
+        }
+
+        try {
+            hybridModule.getClassLoader().loadClass(entry.className());
+            return true;
+        } catch (ClassNotFoundException | LinkageError | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /** Write the classes recorded so far to the file given by {@link Params#recordClassLoadProfile(Path)}, if any. */
+    public void saveClassLoadProfile() {
+        if (classLoadProfile != null) {
+            classLoadProfile.write(params.classLoadProfile().get());
+        }
+    }
+
+    /**
+     * Write the classes transformed so far to the cache given by {@link Params#transformedClassCache(Path)}, if
+     * any. Called by {@link #close()}, and e.g. from a shutdown hook if the container is never closed.
+     */
+    public void saveTransformedClasses() {
+        if (transformedClassCache != null) {
+            transformedClassCache.save();
+        }
+    }
+
+    /**
+     * Write what {@link #saveClassLoadProfile()} and {@link #saveTransformedClasses()} write, e.g. from a shutdown
+     * hook if the container is never closed.
+     */
+    public void saveOnExit() {
+        saveClassLoadProfile();
+        saveTransformedClasses();
+    }
+
     @Override
     public void close() {
+        saveOnExit();
         observableHybridModules.close();
     }
 
@@ -285,28 +740,82 @@ public class HybridModuleContainer implements AutoCloseable {
             return hybridModule;
         }
 
-        if (startedResolutions.contains(id)) {
-            throw new FindException("Cyclic dependency on hybrid module " + id + " detected");
+        var resolution = new Resolution();
+        Resolution ongoingResolution = resolutions.putIfAbsent(id, resolution);
+        if (ongoingResolution != null) {
+            return awaitResolution(id, ongoingResolution);
         }
-        startedResolutions.add(id);
 
-        boolean successful = false;
         try {
-            hybridModule = resolveNewHybridModule(id);
-            hybridModules.put(id, hybridModule);
+            // The hybrid module may have been resolved since the get() above.
+            hybridModule = hybridModules.get(id);
+            if (hybridModule == null) {
+                hybridModule = resolveNewHybridModule(id);
+                hybridModules.put(id, hybridModule);
+            }
 
-            successful = true;
+            resolution.future.complete(hybridModule);
             return hybridModule;
+        } catch (RuntimeException | Error e) {
+            resolution.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            resolutions.remove(id, resolution);
+        }
+    }
+
+    private HybridModule awaitResolution(HybridModuleId id, Resolution resolution) {
+        Thread thread = Thread.currentThread();
+        synchronized (waitingFor) {
+            // Follow the resolutions that are waited for: A thread stops waiting once its resolution is done, and a
+            // cycle back to the current thread means the resolution of id needs itself.
+            for (Resolution awaited = resolution;
+                 awaited != null && !awaited.future.isDone();
+                 awaited = waitingFor.get(awaited.thread)) {
+                if (awaited.thread == thread) {
+                    throw new FindException("Cyclic dependency on hybrid module " + id + " detected");
+                }
+            }
+
+            waitingFor.put(thread, resolution);
+        }
+
+        try {
+            return resolution.future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw failureOfWaiter((RuntimeException) cause);
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
         } finally {
-            if (!successful) {
-                startedResolutions.remove(id);
+            synchronized (waitingFor) {
+                waitingFor.remove(thread);
             }
         }
     }
 
+    /**
+     * Returns a new exception for a thread waiting for a failed resolution, with the failure as the cause. The
+     * message of the failure describes the hybrid modules required by the awaited hybrid module, and each waiter adds
+     * its own "Required by" chain to its own exception while unwinding, with its own stack trace.
+     */
+    private static RuntimeException failureOfWaiter(RuntimeException failure) {
+        if (failure instanceof FindException) return new FindException(failure.getMessage(), failure);
+        if (failure instanceof ResolutionException) return new ResolutionException(failure.getMessage(), failure);
+        if (failure instanceof InvalidHybridModuleException) return new InvalidHybridModuleException(failure.getMessage(), failure);
+        return failure;
+    }
+
+    /** The resolution of a hybrid module by a thread. */
+    private static class Resolution {
+        private final Thread thread = Thread.currentThread();
+        private final CompletableFuture<HybridModule> future = new CompletableFuture<>();
+    }
+
     private HybridModule resolveNewHybridModule(HybridModuleId id) {
         HybridModuleJar jar = observableHybridModules.getJar(id);
-        HybridModule.Builder builder = new HybridModule.Builder(jar);
+        HybridModule.Builder builder = new HybridModule.Builder(jar, params, platformModuleContainer.packageIndex(), hybridPackageIndex,
+                                                                classLoadProfile, transformedClassCache);
         ModuleDescriptor descriptor = jar.descriptor();
 
         if (descriptor.isAutomatic()) {
@@ -1,34 +1,147 @@
 package no.ion.jhms;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.module.FindException;
+import java.lang.module.InvalidModuleDescriptorException;
 import java.lang.module.ModuleDescriptor;
 import java.lang.module.ModuleFinder;
 import java.lang.module.ModuleReader;
 import java.lang.module.ModuleReference;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static no.ion.jhms.ExceptionUtil.uncheck;
 
 class HybridModuleJar implements AutoCloseable {
+    private static final String MODULE_INFO = "module-info.class";
+
     private final Path path;
     private final URI uri;
     private final ModuleDescriptor descriptor;
-    private final ModuleReader reader;
     private final HybridModuleId hybridModuleId;
 
+    /** The reference of the JAR from ModuleFinder, or null if the JAR was not found with a ModuleFinder. */
+    private final ModuleReference reference;
+
+    /**
+     * The entries of a JAR in memory, which need not be opened, or null: A JAR in a {@link ModuleImage}, or a
+     * {@link MappedJarFile} nested in a fat JAR.
+     */
+    private final JarEntries memoryEntries;
+
+    /**
+     * The names of all entries in the JAR, used to answer a lookup of a missing resource without I/O. Known when the
+     * JAR is opened, or otherwise when the content is first opened, and kept when the content is closed.
+     */
+    private volatile Set<String> entryNames;
+
+    /** The content of the JAR, which is opened on first use. */
+    private volatile Content content = null;
+
+    /** The pool limiting the number of JARs read with a module reader, or null if unlimited. */
+    private volatile OpenJarPool openJarPool = null;
+
+    /** When the content was last used, by {@link System#nanoTime()}, if in the pool. */
+    private volatile long lastUsed = 0;
+
     private volatile byte[] sha256Cache = null;
 
+    /** The on-disk cache of checksums, or null. */
+    private volatile ChecksumCache checksumCache = null;
+
+    /** The on-disk cache of uncompressed entries, or null. */
+    private volatile ClassBytesCache classBytesCache = null;
+
     /** {@code path} should refer to a regular file being a hybrid modular JAR. */
-    static HybridModuleJar open(Path path) {
+    static HybridModuleJar open(Path path) { return open(path, (Consumer<ByteBuffer>) null); }
+
+    /**
+     * Open the hybrid modular JAR at {@code path}, reading only the module-info.class and the names of the entries.
+     * The JAR is not kept open: its content is opened when first needed, e.g. to load a class.
+     *
+     * @param moduleInfoConsumer if non-null, is called with the content of the module-info.class, if any
+     */
+    static HybridModuleJar open(Path path, Consumer<ByteBuffer> moduleInfoConsumer) {
+        Optional<MappedJarFile> mappedJarFile;
+        try {
+            mappedJarFile = MappedJarFile.open(path);
+        } catch (UncheckedIOException e) {
+            // E.g. the file has been removed: Let ModuleFinder report it.
+            mappedJarFile = Optional.empty();
+        }
+
+        if (mappedJarFile.isPresent()) {
+            ByteBuffer moduleInfo = mappedJarFile.get().getEntry(MODULE_INFO);
+            if (moduleInfo != null) {
+                ModuleDescriptor descriptor = readDescriptor(path, moduleInfo.duplicate(), mappedJarFile.get().entryNames());
+                if (moduleInfoConsumer != null) {
+                    moduleInfoConsumer.accept(moduleInfo);
+                }
+                return new HybridModuleJar(path, path.toUri(), descriptor, null, null, mappedJarFile.get().entryNames());
+            }
+        }
+
+        // An automatic module, or a JAR that cannot be mapped.
+        HybridModuleJar jar = openWithModuleFinder(path);
+        if (moduleInfoConsumer != null) {
+            jar.getResourceAsStream(MODULE_INFO).ifPresent(inputStream -> {
+                try (InputStream in = inputStream) {
+                    moduleInfoConsumer.accept(ByteBuffer.wrap(in.readAllBytes()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            jar.close();
+        }
+        return jar;
+    }
+
+    /**
+     * Open the hybrid modular JAR nested in a fat JAR, the JAR being e.g. a slice of the mapping of the fat JAR.
+     *
+     * @throws InvalidHybridModuleException if the JAR is an automatic module
+     */
+    static HybridModuleJar openNested(MappedJarFile jarFile, URI uri) {
+        ByteBuffer moduleInfo = jarFile.getEntry(MODULE_INFO);
+        if (moduleInfo == null) {
+            throw new InvalidHybridModuleException("Automatic hybrid modules are not yet supported: " + jarFile.path());
+        }
+
+        ModuleDescriptor descriptor = readDescriptor(jarFile.path(), moduleInfo, jarFile.entryNames());
+        return new HybridModuleJar(jarFile.path(), uri, descriptor, null, jarFile, jarFile.entryNames());
+    }
+
+    private static ModuleDescriptor readDescriptor(Path path, ByteBuffer moduleInfo, Set<String> entryNames) {
+        try {
+            // The packages are found from the entry names only if module-info.class lacks the
+            // ModulePackages attribute.
+            return ModuleDescriptor.read(moduleInfo, () -> packagesOf(path, entryNames));
+        } catch (InvalidModuleDescriptorException e) {
+            // Consistent with ModuleFinder
+            throw new FindException("Error reading module: " + path, e);
+        }
+    }
+
+    private static HybridModuleJar openWithModuleFinder(Path path) {
         Set<ModuleReference> references = ModuleFinder.of(path).findAll();
         switch (references.size()) {
             case 0:
@@ -44,18 +157,54 @@ class HybridModuleJar implements AutoCloseable {
         ModuleReference reference = references.iterator().next();
 
         URI uri = reference.location().orElseThrow(() -> new InvalidHybridModuleException("Hybrid module missing URI: " + path));
-        ModuleReader reader = uncheck(reference::open);
 
-        return new HybridModuleJar(path, uri, reference.descriptor(), reader);
+        return new HybridModuleJar(path, uri, reference.descriptor(), reference, null, null);
+    }
+
+    /** Returns the packages of the JAR with the given entry names, like {@link ModuleFinder} does for a modular JAR. */
+    static Set<String> packagesOf(Path path, Set<String> entryNames) {
+        var packages = new HashSet<String>();
+        for (String entryName : entryNames) {
+            if (entryName.endsWith("/")) {
+                continue;
+            }
+
+            if (entryName.indexOf('/') == -1) {
+                if (entryName.endsWith(".class") && !entryName.equals(MODULE_INFO)) {
+                    throw new FindException("Error reading module: " + path, new InvalidModuleDescriptorException(
+                            entryName + " found in top-level directory (unnamed package not allowed in module)"));
+                }
+                continue;
+            }
+
+            // E.g. META-INF is not a valid package name and is skipped.
+            PackageUtil.getPackageNameFromAbsoluteNameOfResource(entryName).ifPresent(packages::add);
+        }
+        return packages;
     }
 
     static HybridModuleJar open(String path) { return open(Path.of(path)); }
 
-    private HybridModuleJar(Path path, URI uri, ModuleDescriptor descriptor, ModuleReader reader) {
+    /** The JAR at {@code path} with an already known descriptor, e.g. from {@link DescriptorCache}. */
+    static HybridModuleJar open(Path path, ModuleDescriptor descriptor) {
+        return new HybridModuleJar(path, path.toUri(), descriptor, null, null, null);
+    }
+
+    /** A JAR in a {@link ModuleImage}, with the given entries and SHA-256 checksum of the original JAR file. */
+    static HybridModuleJar of(Path path, URI uri, ModuleDescriptor descriptor, JarEntries memoryEntries, byte[] sha256) {
+        var jar = new HybridModuleJar(path, uri, descriptor, null, memoryEntries, memoryEntries.entryNames());
+        jar.sha256Cache = sha256;
+        return jar;
+    }
+
+    private HybridModuleJar(Path path, URI uri, ModuleDescriptor descriptor, ModuleReference reference,
+                            JarEntries memoryEntries, Set<String> entryNames) {
         this.path = path;
         this.uri = uri;
         this.descriptor = descriptor;
-        this.reader = reader;
+        this.reference = reference;
+        this.memoryEntries = memoryEntries;
+        this.entryNames = entryNames;
         this.hybridModuleId = new HybridModuleId(descriptor.name(), HybridModuleVersion.fromRaw(descriptor.rawVersion()));
     }
 
@@ -64,13 +213,57 @@ class HybridModuleJar implements AutoCloseable {
     ModuleDescriptor descriptor() { return descriptor; }
     HybridModuleId hybridModuleId() { return hybridModuleId; }
 
-    /** Get the class bytes given class name, or null if not found. */
-    byte[] getClassBytes(String binaryName) {
+    /** The names of all entries of the JAR. */
+    Set<String> entryNames() { return Collections.unmodifiableSet(knownEntryNames()); }
+
+    /** Returns the names of all entries, opening the content if they are not yet known. */
+    private Set<String> knownEntryNames() {
+        Set<String> entryNames = this.entryNames;
+        if (entryNames == null) {
+            content();
+            entryNames = this.entryNames;
+        }
+        return entryNames;
+    }
+
+    /** The SHA-256 checksum of the JAR file. */
+    byte[] sha256() { return computeSha256().clone(); }
+
+    /** Look up and store the checksum of the JAR in the cache. */
+    void setChecksumCache(ChecksumCache checksumCache) { this.checksumCache = checksumCache; }
+
+    /** Read the entries of the JAR uncompressed from the cache. Must be set before the content is opened. */
+    void setClassBytesCache(ClassBytesCache classBytesCache) { this.classBytesCache = classBytesCache; }
+
+    /** Limit the number of open JARs with the pool. Must be set before the content is opened. */
+    void setOpenJarPool(OpenJarPool openJarPool) { this.openJarPool = openJarPool; }
+
+    long lastUsed() { return lastUsed; }
+    void setLastUsed(long lastUsed) { this.lastUsed = lastUsed; }
+
+    /**
+     * Get the class bytes given class name, or null if not found.
+     *
+     * <p>The returned buffer must not be modified, and must be consumed before the next call from the same thread,
+     * see {@link MappedJarFile#getEntry(String)}.</p>
+     */
+    ByteBuffer getClassBytes(String binaryName) {
         String resourceName = resourceNameFromBinaryClassName(binaryName);
-        return getResourceAsStream(resourceName)
+        Set<String> entryNames = this.entryNames;
+        if (entryNames != null && !entryNames.contains(resourceName)) {
+            // Without opening the content, which may have been closed by the pool.
+            return null;
+        }
+
+        Content content = content();
+        if (content.entries != null) {
+            return content.entries.getEntry(resourceName);
+        }
+
+        return getResourceAsStream(content, resourceName)
                 .map(inputStream -> {
                     try {
-                        return uncheck(inputStream::readAllBytes);
+                        return ByteBuffer.wrap(uncheck(inputStream::readAllBytes));
                     } finally {
                         try {
                             inputStream.close();
@@ -82,63 +275,336 @@ class HybridModuleJar implements AutoCloseable {
                 .orElse(null);
     }
 
+    /**
+     * Returns true if there is an entry with the given name, or a directory entry with the given name with an
+     * appended "/".  This matches the lookup done by {@link ModuleReader#open(String)}.
+     */
+    boolean hasEntry(String absoluteName) { return entryName(absoluteName) != null; }
+
+    /** Returns the name of the entry or directory entry matching the name, or null if none, see {@link #hasEntry(String)}. */
+    private String entryName(String name) {
+        Set<String> entryNames = knownEntryNames();
+        if (entryNames.contains(name)) {
+            return name;
+        }
+
+        if (!name.endsWith("/")) {
+            String directoryName = name + "/";
+            if (entryNames.contains(directoryName)) {
+                return directoryName;
+            }
+        }
+
+        return null;
+    }
+
     /** The caller must ensure to close the returned {@link InputStream} unless null. */
     Optional<InputStream> getResourceAsStream(String absoluteName) {
-        return uncheck(() -> reader.open(absoluteName));
+        if (entryNames != null && entryName(absoluteName) == null) {
+            // Without opening the content, which may have been closed by the pool.
+            return Optional.empty();
+        }
+
+        return getResourceAsStream(content(), absoluteName);
+    }
+
+    private Optional<InputStream> getResourceAsStream(Content content, String absoluteName) {
+        while (true) {
+            String entryName = entryName(absoluteName);
+            if (entryName == null) {
+                return Optional.empty();
+            }
+
+            if (content.entries != null) {
+                // The buffer is reused by the thread, and must be copied.
+                ByteBuffer buffer = content.entries.getEntry(entryName);
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return Optional.of(new ByteArrayInputStream(bytes));
+            }
+
+            if (openJarPool == null) {
+                ModuleReader reader = content.reader;
+                return uncheck(() -> reader.open(absoluteName));
+            }
+
+            // The reader may be closed by the pool at any time, and the resource is therefore read in full.
+            Optional<byte[]> bytes = content.read(absoluteName);
+            if (bytes != null) {
+                return bytes.map(ByteArrayInputStream::new);
+            }
+
+            // Closed by the pool: Reopen
+            content = content();
+        }
     }
 
-    /** Two JARs are {@code probablyEqual} if they are the same file (device ID and i-node), or if they have the same SHA-256 checksum. */
+    /**
+     * Returns true if the two JARs have the same content, i.e. the same SHA-256 checksum.
+     *
+     * <p>The comparison is staged to avoid reading the files if possible: The JARs are equal if they are the same
+     * file (device ID and i-node), and unequal if the file sizes differ or the central directories differ, which
+     * has the CRC-32 of each entry. Only then are the files digested, streaming.</p>
+     */
     boolean checksumEqual(HybridModuleJar that) {
         if (this == that) {
             return true;
         }
 
-        // If the checksums have already been computet, use those.
+        // If the checksums have already been computed, use those.
         if (this.sha256Cache != null && that.sha256Cache != null) {
             return Arrays.equals(this.sha256Cache, that.sha256Cache);
         }
 
+        // A JAR in memory is not a file.
+        if (this.memoryEntries != null || that.memoryEntries != null) {
+            return Arrays.equals(this.computeSha256(), that.computeSha256());
+        }
+
         // Otherwise, the JARs may actually be the same file.
         if (uncheck(() -> Files.isSameFile(this.path, that.path))) {
             return true;
         }
 
+        long thisSize = uncheck(() -> Files.size(this.path));
+        long thatSize = uncheck(() -> Files.size(that.path));
+        if (thisSize != thatSize) {
+            return false;
+        }
+
+        if (!centralDirectoriesMayBeEqual(this.path, that.path)) {
+            return false;
+        }
+
         // Fall back to the full checksum computation.
         return Arrays.equals(this.computeSha256(), that.computeSha256());
     }
 
+    /** Returns false if the central directories of the two JARs of the same size are known to differ. */
+    private static boolean centralDirectoriesMayBeEqual(Path path1, Path path2) {
+        if (path1.getFileSystem() != FileSystems.getDefault() || path2.getFileSystem() != FileSystems.getDefault()) {
+            return true;
+        }
+
+        try (FileChannel channel1 = FileChannel.open(path1, StandardOpenOption.READ);
+             FileChannel channel2 = FileChannel.open(path2, StandardOpenOption.READ)) {
+            long size = channel1.size();
+            if (size != channel2.size() || size > Integer.MAX_VALUE) {
+                // Modified since checked, or too large to map
+                return true;
+            }
+
+            // Only the pages of the central directory are read.
+            ByteBuffer tail1 = MappedJarFile.centralDirectoryAndEnd(channel1.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            ByteBuffer tail2 = MappedJarFile.centralDirectoryAndEnd(channel2.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            return tail1 == null || tail2 == null || tail1.equals(tail2);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Whether the content of the JAR is open, see {@link #open(Path, Consumer)}. */
+    boolean isContentOpen() { return content != null; }
+
+    /** Close the content of the JAR if open. The content is opened again if needed. */
     @Override
     public void close() {
-        uncheck(reader::close);
+        Content content;
+        synchronized (this) {
+            content = this.content;
+            this.content = null;
+            OpenJarPool openJarPool = this.openJarPool;
+            if (openJarPool != null) {
+                openJarPool.closed(this);
+            }
+        }
+
+        if (content != null) {
+            // Outside of the monitor, since closing waits for ongoing reads.
+            content.close();
+        }
     }
 
-    private static String resourceNameFromBinaryClassName(String className) {
-        return className.replaceAll("\\.", "/") + ".class";
+    /**
+     * Close the content of the JAR evicted from the pool, unless it has been reopened and added to the pool again
+     * since. Returns true if the content was closed.
+     */
+    boolean closeContentIfEvicted(OpenJarPool openJarPool) {
+        Content content;
+        synchronized (this) {
+            content = this.content;
+            if (content == null || openJarPool.contains(this)) {
+                return false;
+            }
+            this.content = null;
+        }
+
+        content.close();
+        return true;
     }
 
-    /** Compute the SHA-256 checksum of the JAR file. */
-    private byte[] computeSha256() {
-        if (sha256Cache == null) {
-            MessageDigest sha256;
+    private Content content() {
+        OpenJarPool openJarPool = this.openJarPool;
+        Content content = this.content;
+        if (content == null) {
+            List<HybridModuleJar> victims = null;
+            synchronized (this) {
+                content = this.content;
+                if (content == null) {
+                    content = openContent();
+                    this.content = content;
+                    // Only content read with a module reader keeps the JAR file open, and is limited by the pool.
+                    if (openJarPool != null && content.reader != null) {
+                        // Added to the pool under the monitor, so a concurrent close() cannot be undone.
+                        victims = openJarPool.opened(this);
+                    }
+                }
+            }
+
+            if (victims != null) {
+                // Outside of the monitor, since closing another JAR takes its monitor.
+                openJarPool.evict(victims);
+                return content;
+            }
+        }
+
+        if (openJarPool != null && content.reader != null) {
+            openJarPool.accessed(this);
+        }
+
+        return content;
+    }
+
+    private Content openContent() {
+        if (memoryEntries != null) {
+            return new Content(memoryEntries, null);
+        }
+
+        MappedJarFile mappedJarFile = MappedJarFile.open(path).orElse(null);
+        if (mappedJarFile != null) {
+            ClassBytesCache classBytesCache = this.classBytesCache;
+            JarEntries entries = classBytesCache == null ? mappedJarFile : classBytesCache.entries(this, mappedJarFile);
+            if (entryNames == null) {
+                entryNames = mappedJarFile.entryNames();
+            }
+            return new Content(entries, null);
+        }
+
+        ModuleReference reference = this.reference;
+        if (reference == null) {
+            reference = ModuleFinder.of(path).find(descriptor.name())
+                    .orElseThrow(() -> new FindException("Hybrid module " + hybridModuleId + " not found at " + path));
+        }
+
+        ModuleReader reader = uncheck(reference::open);
+        if (entryNames == null) {
+            entryNames = uncheck(reader::list).collect(Collectors.toCollection(HashSet::new));
+        }
+        return new Content(null, reader);
+    }
+
+    /** The opened content of the JAR: Either the entries in memory, e.g. the mapped JAR file, or a module reader. */
+    private static class Content {
+        private final JarEntries entries;
+        private final ModuleReader reader;
+
+        /** Held for reading while reading with the reader, and for writing while closing the reader. */
+        private final ReentrantReadWriteLock readerLock = new ReentrantReadWriteLock();
+        private boolean closed = false;
+
+        private Content(JarEntries entries, ModuleReader reader) {
+            this.entries = entries;
+            this.reader = reader;
+        }
+
+        /** Returns the content of the resource read with the reader, empty if not found, or null if closed. */
+        private Optional<byte[]> read(String name) {
+            readerLock.readLock().lock();
+            try {
+                if (closed) {
+                    return null;
+                }
+
+                Optional<InputStream> inputStream = uncheck(() -> reader.open(name));
+                if (inputStream.isEmpty()) {
+                    return Optional.empty();
+                }
+
+                try (InputStream in = inputStream.get()) {
+                    return Optional.of(in.readAllBytes());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } finally {
+                readerLock.readLock().unlock();
+            }
+        }
+
+        /** Close the content. A mapped JAR file is unmapped when garbage collected, since slices may still be in use. */
+        private void close() {
+            if (reader == null) {
+                return;
+            }
+
+            readerLock.writeLock().lock();
             try {
-                sha256 = MessageDigest.getInstance("SHA-256");
-            } catch (NoSuchAlgorithmException e) {
-                throw new RuntimeException(e);
+                if (!closed) {
+                    closed = true;
+                    uncheck(reader::close);
+                }
+            } finally {
+                readerLock.writeLock().unlock();
             }
+        }
+    }
 
-            byte[] fileContent = uncheck(() -> Files.readAllBytes(path));
-            sha256Cache = sha256.digest(fileContent);
+    private static String resourceNameFromBinaryClassName(String className) {
+        return className.replace('.', '/') + ".class";
+    }
+
+    /** Returns the SHA-256 checksum of the JAR file, from the checksum cache if possible. */
+    private byte[] computeSha256() {
+        if (sha256Cache == null) {
+            ChecksumCache checksumCache = this.checksumCache;
+            sha256Cache = checksumCache == null ? digestSha256() : checksumCache.sha256(path, this::digestSha256);
         }
 
         return sha256Cache;
     }
 
+    /** Compute the SHA-256 checksum of the JAR file, reading the file in chunks. */
+    private byte[] digestSha256() {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (memoryEntries instanceof MappedJarFile) {
+            // A nested JAR. The checksum of a JAR in a module image is known.
+            sha256.update(((MappedJarFile) memoryEntries).content());
+            return sha256.digest();
+        }
+
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int length; (length = in.read(buffer)) != -1; ) {
+                sha256.update(buffer, 0, length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return sha256.digest();
+    }
+
     String sha256String() {
         return bytesToHex(computeSha256());
     }
 
     private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
-    private static String bytesToHex(byte[] bytes) {
+    static String bytesToHex(byte[] bytes) {
         char[] hexChars = new char[bytes.length * 2];
         for (int j = 0; j < bytes.length; j++) {
             int v = bytes[j] & 0xFF;
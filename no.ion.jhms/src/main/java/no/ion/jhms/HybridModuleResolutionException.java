@@ -0,0 +1,31 @@
+package no.ion.jhms;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thrown by {@link HybridModuleContainer#resolveAll(java.util.List) resolveAll()} when one or more root hybrid
+ * modules failed to resolve. The message lists all failures, which are also added as suppressed exceptions.
+ */
+public class HybridModuleResolutionException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, RuntimeException> failures;
+
+    HybridModuleResolutionException(Map<String, RuntimeException> failures) {
+        super(message(failures));
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        failures.values().forEach(this::addSuppressed);
+    }
+
+    /** The exception of each root hybrid module that failed to resolve, by root, in the order requested. */
+    public Map<String, RuntimeException> failures() { return failures; }
+
+    private static String message(Map<String, RuntimeException> failures) {
+        var message = new StringBuilder("Failed to resolve " + failures.size() + " root hybrid module" +
+                                        (failures.size() == 1 ? "" : "s") + ":");
+        failures.forEach((root, exception) -> message.append("\n  ").append(root).append(": ").append(exception.getMessage()));
+        return message.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package no.ion.jhms;
+
+import java.io.UncheckedIOException;
+import java.lang.module.FindException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static no.ion.jhms.ProgramUtil.failIf;
+import static no.ion.jhms.ProgramUtil.userError;
+
+/**
+ * Entrypoint for creating a module image: A single file with all hybrid modules on a module path, with their
+ * precomputed packages and uncompressed entries, see {@link ModuleImage}.
+ */
+public class ImageMain {
+    public static void main(String... args) {
+        new ImageMain().run(args);
+    }
+
+    private void usage() {
+        System.out.print("Usage: java -cp JHMSJAR no.ion.jhms.ImageMain -o IMAGE MODULEPATH\n" +
+                         "Write the hybrid modules of MODULEPATH to the module image file IMAGE\n" +
+                         "\n" +
+                         "MODULEPATH is a colon-separated list of modular JARs and directories of modular\n" +
+                         "JARs, as for javahms -p.  The hybrid modules in IMAGE are made observable with\n" +
+                         "HybridModuleContainer::discoverHybridModulesInImage.  Or, IMAGE can be added as\n" +
+                         "META-INF/mod.image to a fat JAR, see no.ion.jhms.FatMain: It should then be\n" +
+                         "stored uncompressed, e.g. with jar --no-compress, to be used without copying.\n");
+        System.exit(0);
+    }
+
+    private void run(String... args) {
+        Path image = null;
+
+        int argi = 0;
+        for (; argi < args.length; ++argi) {
+            String arg = args[argi];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    usage();
+                    continue;  // Never reached.
+                case "-o":
+                case "--output":
+                    failIf(argi + 1 >= args.length, "Missing argument to " + arg);
+                    image = Path.of(args[++argi]);
+                    continue;
+                default:
+                    if (arg.startsWith("-")) {
+                        userError("Unknown option: " + arg);
+                    }
+                    // fall-through & break
+            }
+
+            break;
+        }
+
+        failIf(image == null, "Missing -o IMAGE, see '--help'");
+        failIf(argi >= args.length, "Missing MODULEPATH, see '--help'");
+        String modulePath = args[argi++];
+        failIf(argi < args.length, "Extraneous argument: " + (argi < args.length ? args[argi] : ""));
+
+        try (var observableHybridModules = new ObservableHybridModules()) {
+            observableHybridModules.discoverHybridModulesFromModulePath(modulePath);
+            List<HybridModuleJar> jars = observableHybridModules.getHybridModuleIds().stream()
+                    .map(observableHybridModules::getJar)
+                    .collect(Collectors.toList());
+            failIf(jars.isEmpty(), "No hybrid modules found in " + modulePath);
+            ModuleImage.write(image, jars);
+        } catch (FindException | InvalidHybridModuleException | UncheckedIOException e) {
+            userError(e.getMessage());
+        }
+    }
+}
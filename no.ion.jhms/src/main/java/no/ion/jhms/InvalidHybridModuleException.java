@@ -7,4 +7,8 @@ class InvalidHybridModuleException extends RuntimeException {
     InvalidHybridModuleException(String message) {
         super(message);
     }
+
+    InvalidHybridModuleException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
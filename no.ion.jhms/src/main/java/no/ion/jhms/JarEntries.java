@@ -0,0 +1,24 @@
+package no.ion.jhms;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+/** The entries of a JAR read from memory, e.g. a {@link MappedJarFile}, or a hybrid module in a {@link ModuleImage}. */
+interface JarEntries {
+    /** Returns the names of all entries. */
+    Set<String> entryNames();
+
+    /**
+     * Returns the content of the entry, or null if there is no such entry.
+     *
+     * <p>The returned buffer must not be modified, and the caller must be done with it before making a new call
+     * from the same thread, see {@link MappedJarFile#getEntry(String)}.</p>
+     */
+    ByteBuffer getEntry(String name);
+
+    /** Returns the size of the (uncompressed) content of the entry, or -1 if there is no such entry. */
+    default int entrySize(String name) {
+        ByteBuffer entry = getEntry(name);
+        return entry == null ? -1 : entry.remaining();
+    }
+}
@@ -22,6 +22,8 @@ public class Main {
     private String mainClass = null;
     private String contextId = null;
     private ModuleGraph.Params moduleGraphParams = null;
+    private Path replayClassLoadProfile = null;
+    private final HybridModuleContainer.Params containerParams = new HybridModuleContainer.Params();
 
     public static void main(String... args) {
         new Main().run(args);
@@ -38,6 +40,29 @@ public class Main {
                     ++index;
                     contextId = args[index];
                     continue;
+                case "--checksum-cache":
+                    failIf(index + 1 >= args.length, () -> "Missing argument to " + arg);
+                    ++index;
+                    containerParams.checksumCache(Path.of(args[index]));
+                    continue;
+                case "--class-bytes-cache":
+                    failIf(index + 1 >= args.length, () -> "Missing argument to " + arg);
+                    ++index;
+                    containerParams.classBytesCache(Path.of(args[index]));
+                    continue;
+                case "--discovery-threads":
+                    failIf(index + 1 >= args.length, () -> "Missing argument to " + arg);
+                    ++index;
+                    containerParams.discoveryParallelism(parsePositiveInt(arg, args[index]));
+                    continue;
+                case "--lazy-class-loaders":
+                    containerParams.lazyClassLoaders(true);
+                    continue;
+                case "--max-open-jars":
+                    failIf(index + 1 >= args.length, () -> "Missing argument to " + arg);
+                    ++index;
+                    containerParams.openJarPool(new OpenJarPool(parsePositiveInt(arg, args[index])));
+                    continue;
                 case "--module-graph":
                 case "-g":
                     failIf(index + 1 >= args.length, () -> "Missing argument to " + arg);
@@ -65,6 +90,27 @@ public class Main {
                     }
                     ++index;
                     break;
+                case "--platform-module-index":
+                    failIf(index + 1 >= args.length, () -> "Missing argument to " + arg);
+                    ++index;
+                    // Before the first container is created, which creates the shared PlatformModuleContainer.
+                    System.setProperty(PlatformModuleContainer.INDEX_PROPERTY, args[index]);
+                    continue;
+                case "--record-class-load-profile":
+                    failIf(index + 1 >= args.length, () -> "Missing argument to " + arg);
+                    ++index;
+                    containerParams.recordClassLoadProfile(Path.of(args[index]));
+                    continue;
+                case "--replay-class-load-profile":
+                    failIf(index + 1 >= args.length, () -> "Missing argument to " + arg);
+                    ++index;
+                    replayClassLoadProfile = Path.of(args[index]);
+                    continue;
+                case "--descriptor-cache":
+                    failIf(index + 1 >= args.length, () -> "Missing argument to " + arg);
+                    ++index;
+                    containerParams.descriptorCache(Path.of(args[index]));
+                    continue;
                 case "--":
                     ++index;
                     break;
@@ -91,7 +137,7 @@ public class Main {
         HybridModuleContainer.ResolveParams params = validateRootHybridModule(hybridModuleName);
 
         // Avoid closing container when returning from main(), since daemon threads may have been spawned.
-        var container = new HybridModuleContainer();
+        var container = new HybridModuleContainer(containerParams);
 
         try {
             container.discoverHybridModulesFromModulePath(modulePath);
@@ -108,6 +154,16 @@ public class Main {
         }
 
         if (moduleGraphParams == null) {
+            if (replayClassLoadProfile != null) {
+                // Alongside the main method, which waits for a class being loaded by the replay if needed.
+                container.replayClassLoadProfile(replayClassLoadProfile, Runtime.getRuntime().availableProcessors());
+            }
+
+            if (containerParams.classLoadProfile().isPresent() || containerParams.transformedClassCache().isPresent()) {
+                // The container is not closed, see above, so the profile and transformed classes are written on exit.
+                Runtime.getRuntime().addShutdownHook(new Thread(container::saveOnExit));
+            }
+
             runContainer(contextId, container, rootModule, mainClass, mainArgs);
         } else {
             for (String module : moduleGraphParams.modulesExcluded()) {
@@ -136,6 +192,17 @@ public class Main {
         }
     }
 
+    private static int parsePositiveInt(String option, String value) {
+        int number = -1;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        failIf(number < 1, () -> "Argument to " + option + " must be a positive integer: '" + value + "'");
+        return number;
+    }
+
     private ModuleGraph.Params parseModuleGraphOptionValue(String optionValue) {
         var params = new ModuleGraph.Params();
 
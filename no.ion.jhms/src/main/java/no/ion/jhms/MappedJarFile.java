@@ -0,0 +1,294 @@
+package no.ion.jhms;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A read-only, memory-mapped view of a JAR file.
+ *
+ * <p>The central directory is parsed once when the JAR is opened. Entries are then read straight from the
+ * mapping: a STORED entry is returned as a slice of the mapping, while a DEFLATED entry is inflated into a buffer
+ * that is reused by the calling thread.</p>
+ *
+ * <p>Only a subset of the ZIP format is supported. {@link #open(Path)} returns empty for e.g. ZIP64 and
+ * multi-release JARs, in case the JAR must be read with the {@link java.lang.module.ModuleReader}.</p>
+ */
+class MappedJarFile implements JarEntries {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<ByteBuffer> inflateBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(8192));
+
+    private final Path path;
+    private final ByteBuffer mapping;
+
+    /** The offset of the central directory header of each entry, by entry name. */
+    private final HashMap<String, Integer> centralHeaderOffsets;
+
+    /** Returns the mapped JAR file, or empty if the JAR file must be read by other means. */
+    static Optional<MappedJarFile> open(Path path) {
+        if (path.getFileSystem() != FileSystems.getDefault()) {
+            // E.g. a JAR in a zip file system.
+            return Optional.empty();
+        }
+
+        MappedByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return Optional.empty();
+            }
+
+            // The mapping stays valid after the channel has been closed.
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return of(mapping, path);
+    }
+
+    /**
+     * Returns the JAR file with the given content, or empty if the JAR file must be read by other means. The content
+     * is e.g. a slice of the mapping of an outer JAR file with a STORED nested JAR, see
+     * {@link HybridModuleJar#openNested(MappedJarFile, java.net.URI)}. The content must not be modified.
+     *
+     * @param path the path of the JAR file, used in e.g. error messages
+     */
+    static Optional<MappedJarFile> of(ByteBuffer content, Path path) {
+        ByteBuffer mapping = content.slice().order(ByteOrder.LITTLE_ENDIAN);
+        HashMap<String, Integer> centralHeaderOffsets = readCentralDirectory(mapping);
+        if (centralHeaderOffsets == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new MappedJarFile(path, mapping, centralHeaderOffsets));
+    }
+
+    private MappedJarFile(Path path, ByteBuffer mapping, HashMap<String, Integer> centralHeaderOffsets) {
+        this.path = path;
+        this.mapping = mapping;
+        this.centralHeaderOffsets = centralHeaderOffsets;
+    }
+
+    Path path() { return path; }
+
+    /** The content of the JAR file, e.g. to compute its checksum. */
+    ByteBuffer content() { return mapping.duplicate().order(ByteOrder.BIG_ENDIAN); }
+
+    @Override
+    public Set<String> entryNames() { return Collections.unmodifiableSet(centralHeaderOffsets.keySet()); }
+
+    /**
+     * Returns the content of the entry, or null if there is no such entry.
+     *
+     * <p>The returned buffer must not be modified: It is either a (read-only) slice of the mapping, or a buffer
+     * reused by the next call from the same thread. The caller must therefore be done with the buffer before
+     * making a new call.</p>
+     */
+    @Override
+    public ByteBuffer getEntry(String name) { return getEntry(name, false); }
+
+    /**
+     * Returns the content of the entry as a buffer that stays valid, or null if there is no such entry: A slice of
+     * the mapping if STORED, or a new buffer if DEFLATED.
+     */
+    ByteBuffer getEntryRetained(String name) { return getEntry(name, true); }
+
+    /** Returns the uncompressed size of the entry from the central directory, without inflating the entry. */
+    @Override
+    public int entrySize(String name) {
+        Integer centralHeaderOffset = centralHeaderOffsets.get(name);
+        return centralHeaderOffset == null ? -1 : mapping.getInt(centralHeaderOffset + 24);
+    }
+
+    /** Whether any entry is compressed, i.e. must be inflated when read. */
+    boolean hasDeflatedEntries() {
+        for (int centralHeaderOffset : centralHeaderOffsets.values()) {
+            if (u16(mapping, centralHeaderOffset + 10) != STORED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ByteBuffer getEntry(String name, boolean retain) {
+        Integer centralHeaderOffset = centralHeaderOffsets.get(name);
+        if (centralHeaderOffset == null) {
+            return null;
+        }
+
+        try {
+            return readEntry(centralHeaderOffset, retain);
+        } catch (ZipException e) {
+            throw new UncheckedIOException("Failed to read entry " + name + " in " + path, e);
+        }
+    }
+
+    private ByteBuffer readEntry(int centralHeaderOffset, boolean retain) throws ZipException {
+        int method = u16(mapping, centralHeaderOffset + 10);
+        int compressedSize = mapping.getInt(centralHeaderOffset + 20);
+        int size = mapping.getInt(centralHeaderOffset + 24);
+        int localHeaderOffset = mapping.getInt(centralHeaderOffset + 42);
+
+        if (localHeaderOffset < 0 || localHeaderOffset > mapping.limit() - LOCAL_HEADER_SIZE ||
+                mapping.getInt(localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Bad local header");
+        }
+
+        int dataOffset = localHeaderOffset + LOCAL_HEADER_SIZE + u16(mapping, localHeaderOffset + 26) + u16(mapping, localHeaderOffset + 28);
+        if (compressedSize < 0 || size < 0 || dataOffset > mapping.limit() - compressedSize) {
+            throw new ZipException("Bad entry size");
+        }
+
+        ByteBuffer data = mapping.duplicate().position(dataOffset).limit(dataOffset + compressedSize).slice();
+
+        switch (method) {
+            case STORED:
+                return data;
+            case DEFLATED:
+                ByteBuffer inflated = inflate(data, size);
+                return retain ? ByteBuffer.allocate(size).put(inflated).flip() : inflated;
+            default:
+                throw new ZipException("Unsupported compression method " + method);
+        }
+    }
+
+    private static ByteBuffer inflate(ByteBuffer data, int size) throws ZipException {
+        ByteBuffer buffer = inflateBuffer.get();
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Integer.highestOneBit(size) << 1);
+            inflateBuffer.set(buffer);
+        }
+        buffer.clear().limit(size);
+
+        Inflater inflater = MappedJarFile.inflater.get();
+        inflater.reset();
+        inflater.setInput(data);
+        try {
+            while (buffer.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(buffer) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Truncated deflated entry");
+                }
+            }
+        } catch (DataFormatException e) {
+            ZipException zipException = new ZipException(e.getMessage());
+            zipException.initCause(e);
+            throw zipException;
+        }
+
+        if (buffer.hasRemaining()) {
+            throw new ZipException("Deflated entry is shorter than its size");
+        }
+
+        // Not read-only: ClassLoader::defineClass would then copy the bytes to an array.
+        return buffer.flip();
+    }
+
+    /**
+     * Returns the tail of the ZIP file in the mapping, from the start of the central directory to the end of the file,
+     * or null if not found. The tail has the name, CRC-32, and sizes of all entries.
+     */
+    static ByteBuffer centralDirectoryAndEnd(ByteBuffer mapping) {
+        mapping = mapping.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int endHeaderOffset = findEndHeader(mapping);
+        if (endHeaderOffset == -1) {
+            return null;
+        }
+
+        int centralDirectoryOffset = mapping.getInt(endHeaderOffset + 16);
+        if (centralDirectoryOffset < 0 || centralDirectoryOffset > endHeaderOffset) {
+            // ZIP64 or garbage
+            return null;
+        }
+
+        return mapping.position(centralDirectoryOffset).slice();
+    }
+
+    /** Returns the central header offsets by entry name, or null if the JAR is not supported. */
+    private static HashMap<String, Integer> readCentralDirectory(ByteBuffer mapping) {
+        int endHeaderOffset = findEndHeader(mapping);
+        if (endHeaderOffset == -1) {
+            return null;
+        }
+
+        int entries = u16(mapping, endHeaderOffset + 10);
+        int centralDirectorySize = mapping.getInt(endHeaderOffset + 12);
+        int centralDirectoryOffset = mapping.getInt(endHeaderOffset + 16);
+        if (entries == 0xFFFF || centralDirectorySize == -1 || centralDirectoryOffset == -1 ||
+                centralDirectoryOffset < 0 || centralDirectorySize < 0 ||
+                centralDirectoryOffset > endHeaderOffset - centralDirectorySize) {
+            // ZIP64 or garbage
+            return null;
+        }
+
+        var centralHeaderOffsets = new HashMap<String, Integer>(entries * 4 / 3 + 1);
+        int offset = centralDirectoryOffset;
+        int end = centralDirectoryOffset + centralDirectorySize;
+        for (int i = 0; i < entries; ++i) {
+            if (offset > end - CENTRAL_HEADER_SIZE || mapping.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                return null;
+            }
+
+            int flags = u16(mapping, offset + 8);
+            int nameLength = u16(mapping, offset + 28);
+            int extraLength = u16(mapping, offset + 30);
+            int commentLength = u16(mapping, offset + 32);
+            if (offset + CENTRAL_HEADER_SIZE + nameLength > end) {
+                return null;
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            mapping.duplicate().position(offset + CENTRAL_HEADER_SIZE).get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            if ((flags & 1) != 0 || name.startsWith("META-INF/versions/")) {
+                // Encrypted entries are not supported.  Multi-release JARs must be read by the ModuleReader
+                // to get the versioned entries.
+                return null;
+            }
+
+            centralHeaderOffsets.putIfAbsent(name, offset);
+            offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return centralHeaderOffsets;
+    }
+
+    private static int findEndHeader(ByteBuffer mapping) {
+        int lowestOffset = Math.max(0, mapping.limit() - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+        for (int offset = mapping.limit() - END_HEADER_SIZE; offset >= lowestOffset; --offset) {
+            if (mapping.getInt(offset) == END_HEADER_SIGNATURE &&
+                    offset + END_HEADER_SIZE + u16(mapping, offset + 20) == mapping.limit()) {
+                return offset;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int u16(ByteBuffer buffer, int offset) { return Short.toUnsignedInt(buffer.getShort(offset)); }
+}
@@ -0,0 +1,389 @@
+package no.ion.jhms;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.module.InvalidModuleDescriptorException;
+import java.lang.module.ModuleDescriptor;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A single file with the hybrid modules of an application, e.g. for a fat JAR, see {@link FatMain}.
+ *
+ * <p>The image has the precomputed packages and the entry table of each hybrid modular JAR, followed by the
+ * uncompressed content of all entries. Opening an image reads only the header onto the heap, i.e. the packages and
+ * the entry table of each module: The module descriptors are read from the module-info.class entries without
+ * scanning entry names for packages, and class bytes are returned as slices of the mapped image, without inflating
+ * or copying.</p>
+ *
+ * <p>The image is created with {@link ImageMain}. Layout, all integers being big-endian:</p>
+ *
+ * <pre>
+ *   int magic "JHMI", int version, int module count
+ *   for each module: UTF JAR file name, 32 bytes SHA-256 of the JAR,
+ *                    int package count, UTF package...,
+ *                    int entry count, (UTF name, int offset, int length)...
+ *   the content of all entries, the offsets being relative to the start of the content
+ * </pre>
+ */
+class ModuleImage {
+    private static final int MAGIC = 0x4a484d49; // "JHMI"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SHA256_LENGTH = 32;
+    private static final String MODULE_INFO = "module-info.class";
+
+    private final List<HybridModuleJar> jars;
+    private final List<JarEntries> entries;
+
+    /** Map and read the header of the image file. */
+    static ModuleImage open(Path path) {
+        ByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new InvalidHybridModuleException("Module image is too large: " + path);
+            }
+
+            // The mapping stays valid after the channel has been closed.
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return of(mapping, path, path.toUri());
+    }
+
+    /**
+     * Read the header of the image in the buffer, e.g. a slice of a mapped fat JAR. The buffer must not be modified
+     * while the image is in use.
+     *
+     * @param path     the path of the image, used for the paths of the hybrid modules in e.g. error messages
+     * @param location the location of the image, used for the code source location of the hybrid modules
+     */
+    static ModuleImage of(ByteBuffer image, Path path, URI location) {
+        try {
+            return new ModuleImage(image.duplicate(), path, location);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new InvalidHybridModuleException("Invalid module image " + path + ": " + e);
+        }
+    }
+
+    private ModuleImage(ByteBuffer image, Path path, URI location) {
+        if (image.remaining() < 8 || image.getInt() != MAGIC) {
+            throw new InvalidHybridModuleException("Not a module image: " + path);
+        }
+        int formatVersion = image.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new InvalidHybridModuleException("Unsupported version " + formatVersion + " of module image " + path);
+        }
+
+        int moduleCount = image.getInt();
+        var headers = new ArrayList<ModuleHeader>(moduleCount);
+        for (int i = 0; i < moduleCount; ++i) {
+            headers.add(ModuleHeader.read(image));
+        }
+
+        ByteBuffer content = image.slice();
+        var jars = new ArrayList<HybridModuleJar>(moduleCount);
+        var entriesList = new ArrayList<JarEntries>(moduleCount);
+        for (var header : headers) {
+            var entries = new Entries(content, header.entries);
+            entriesList.add(entries);
+            Path jarPath = Path.of(path + "!/" + header.jarName);
+            ByteBuffer moduleInfo = entries.getEntry(MODULE_INFO);
+            if (moduleInfo == null) {
+                throw new InvalidHybridModuleException("Missing " + MODULE_INFO + " in " + jarPath);
+            }
+
+            final ModuleDescriptor descriptor;
+            try {
+                descriptor = ModuleDescriptor.read(moduleInfo, () -> header.packages);
+            } catch (InvalidModuleDescriptorException e) {
+                throw new InvalidHybridModuleException("Error reading module: " + jarPath + ": " + e.getMessage());
+            }
+
+            URI uri = URI.create(location + "#" + header.jarName);
+            jars.add(HybridModuleJar.of(jarPath, uri, descriptor, entries, header.sha256));
+        }
+        this.jars = List.copyOf(jars);
+        this.entries = List.copyOf(entriesList);
+    }
+
+    /** The hybrid modular JARs in the image, in the order they were written. */
+    List<HybridModuleJar> jars() { return jars; }
+
+    /** The entries of the hybrid modular JARs, in the order of {@link #jars()}. */
+    List<JarEntries> entries() { return entries; }
+
+    /** Write the hybrid modular JARs to the image file, replacing any existing file atomically. */
+    static void write(Path path, List<HybridModuleJar> jars) {
+        var modules = new ArrayList<ModuleContent>(jars.size());
+        for (var jar : jars) {
+            if (jar.descriptor().isAutomatic()) {
+                throw new InvalidHybridModuleException("Automatic hybrid modules cannot be added to a module image: " + jar.path());
+            }
+
+            modules.add(new ModuleContent(jar.path(), jar.sha256(), jar.descriptor(), jar.entryNames(), new EntryReader() {
+                @Override
+                public long length(String entryName) throws IOException {
+                    return transferEntry(jar, entryName, OutputStream.nullOutputStream());
+                }
+
+                @Override
+                public long transferTo(String entryName, OutputStream out) throws IOException {
+                    return transferEntry(jar, entryName, out);
+                }
+            }));
+        }
+
+        writeModules(path, modules);
+    }
+
+    /** Write an image with the single hybrid modular JAR with the given entries, e.g. for {@link ClassBytesCache}. */
+    static void write(Path path, Path jarPath, byte[] sha256, ModuleDescriptor descriptor, JarEntries entries) {
+        var module = new ModuleContent(jarPath, sha256, descriptor, entries.entryNames(), new EntryReader() {
+            @Override
+            public long length(String entryName) { return entries.entrySize(entryName); }
+
+            @Override
+            public long transferTo(String entryName, OutputStream out) throws IOException {
+                // The buffer may be reused by the next call, and is copied in chunks.
+                ByteBuffer buffer = entries.getEntry(entryName);
+                long length = buffer.remaining();
+                byte[] chunk = new byte[(int) Math.min(length, 8192)];
+                while (buffer.hasRemaining()) {
+                    int chunkLength = Math.min(chunk.length, buffer.remaining());
+                    buffer.get(chunk, 0, chunkLength);
+                    out.write(chunk, 0, chunkLength);
+                }
+                return length;
+            }
+        });
+
+        writeModules(path, List.of(module));
+    }
+
+    /**
+     * Write the image in two passes over the entries, so only one entry is on the heap at a time: The first pass
+     * computes the offsets of the entry table in the header, and the second writes the content.
+     */
+    private static void writeModules(Path path, List<ModuleContent> modules) {
+        writeFile(path, out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(modules.size());
+            int offset = 0;
+            for (var module : modules) {
+                out.writeUTF(module.jarName);
+                out.write(module.sha256);
+
+                out.writeInt(module.packages.size());
+                for (String packageName : module.packages) {
+                    out.writeUTF(packageName);
+                }
+
+                out.writeInt(module.entryNames.size());
+                for (int i = 0; i < module.entryNames.size(); ++i) {
+                    String entryName = module.entryNames.get(i);
+                    int length = Math.toIntExact(module.reader.length(entryName));
+                    module.lengths[i] = length;
+                    out.writeUTF(entryName);
+                    out.writeInt(offset);
+                    out.writeInt(length);
+                    offset = Math.addExact(offset, length);
+                }
+            }
+
+            for (var module : modules) {
+                for (int i = 0; i < module.entryNames.size(); ++i) {
+                    String entryName = module.entryNames.get(i);
+                    long length = module.reader.transferTo(entryName, out);
+                    if (length != module.lengths[i]) {
+                        throw new IOException(entryName + " in " + module.jarName + " changed while writing the image");
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Write the file, replacing any existing file atomically. Unlike a {@link CacheFile}, the image may be packaged
+     * or shared, and is created with the default permissions.
+     */
+    private static void writeFile(Path path, CacheFile.Writer writer) {
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporaryFile = directory.resolve(path.getFileName() + "." +
+                Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (var out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporaryFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)))) {
+                writer.write(out);
+            }
+
+            try {
+                Files.move(temporaryFile, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            deleteAfterFailure(temporaryFile, e);
+            throw new UncheckedIOException("Failed to write module image " + path, e);
+        } catch (RuntimeException e) {
+            deleteAfterFailure(temporaryFile, e);
+            throw e;
+        }
+    }
+
+    private static void deleteAfterFailure(Path temporaryFile, Exception failure) {
+        try {
+            Files.deleteIfExists(temporaryFile);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /** Returns the number of bytes of the entry written to out. */
+    private static long transferEntry(HybridModuleJar jar, String entryName, OutputStream out) throws IOException {
+        if (entryName.endsWith("/")) {
+            return 0;
+        }
+
+        InputStream inputStream = jar.getResourceAsStream(entryName)
+                .orElseThrow(() -> new IllegalStateException("Failed to read " + entryName + " in " + jar.path()));
+        try (InputStream in = inputStream) {
+            return in.transferTo(out);
+        }
+    }
+
+    /** Reads the content of the entries of a hybrid module to be written to an image. */
+    private interface EntryReader {
+        /** Returns the length of the content of the entry. */
+        long length(String entryName) throws IOException;
+
+        /** Writes the content of the entry to out, and returns its length. */
+        long transferTo(String entryName, OutputStream out) throws IOException;
+    }
+
+    /** A hybrid modular JAR to be written to an image. */
+    private static class ModuleContent {
+        private final String jarName;
+        private final byte[] sha256;
+        private final Set<String> packages;
+        private final List<String> entryNames;
+        private final EntryReader reader;
+
+        /** The length of the content of each entry, in the order of the entry names, set by the first pass. */
+        private final int[] lengths;
+
+        private ModuleContent(Path jarPath, byte[] sha256, ModuleDescriptor descriptor, Set<String> entryNames,
+                              EntryReader reader) {
+            this.jarName = jarPath.getFileName().toString();
+            this.sha256 = sha256;
+            this.packages = new TreeSet<>(descriptor.packages());
+            this.entryNames = new ArrayList<>(new TreeSet<>(entryNames));
+            this.reader = reader;
+            this.lengths = new int[this.entryNames.size()];
+        }
+    }
+
+    private static class ModuleHeader {
+        private final String jarName;
+        private final byte[] sha256;
+        private final Set<String> packages;
+        private final HashMap<String, Long> entries;
+
+        private static ModuleHeader read(ByteBuffer image) {
+            String jarName = readUTF(image);
+            byte[] sha256 = new byte[SHA256_LENGTH];
+            image.get(sha256);
+
+            int packageCount = image.getInt();
+            var packages = new TreeSet<String>();
+            for (int i = 0; i < packageCount; ++i) {
+                packages.add(readUTF(image));
+            }
+
+            int entryCount = image.getInt();
+            var entries = new HashMap<String, Long>(entryCount * 4 / 3 + 1);
+            for (int i = 0; i < entryCount; ++i) {
+                String name = readUTF(image);
+                int offset = image.getInt();
+                int length = image.getInt();
+                if (offset < 0 || length < 0) {
+                    throw new IllegalArgumentException("Bad entry " + name);
+                }
+                entries.put(name, ((long) offset << 32) | length);
+            }
+
+            return new ModuleHeader(jarName, sha256, Collections.unmodifiableSet(packages), entries);
+        }
+
+        private ModuleHeader(String jarName, byte[] sha256, Set<String> packages, HashMap<String, Long> entries) {
+            this.jarName = jarName;
+            this.sha256 = sha256;
+            this.packages = packages;
+            this.entries = entries;
+        }
+    }
+
+    /** The entries of a hybrid module in the image, as slices of the content of the image. */
+    private static class Entries implements JarEntries {
+        private final ByteBuffer content;
+
+        /** The offset in the upper, and length in the lower, 32 bits, by entry name. */
+        private final HashMap<String, Long> entries;
+
+        private Entries(ByteBuffer content, HashMap<String, Long> entries) {
+            this.content = content;
+            this.entries = entries;
+            for (long entry : entries.values()) {
+                if ((int) (entry >>> 32) > content.limit() - (int) entry) {
+                    throw new IllegalArgumentException("Entry outside of the image");
+                }
+            }
+        }
+
+        @Override
+        public Set<String> entryNames() { return Collections.unmodifiableSet(entries.keySet()); }
+
+        /** Returns the content of the entry as a slice of the image, which stays valid. */
+        @Override
+        public ByteBuffer getEntry(String name) {
+            Long entry = entries.get(name);
+            if (entry == null) {
+                return null;
+            }
+
+            int offset = (int) (entry >>> 32);
+            int length = (int) (long) entry;
+            return content.duplicate().position(offset).limit(offset + length).slice();
+        }
+    }
+
+    /** Reads a string written with {@link java.io.DataOutputStream#writeUTF(String)}, assuming no NUL or surrogates. */
+    private static String readUTF(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
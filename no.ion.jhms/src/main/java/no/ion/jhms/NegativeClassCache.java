@@ -0,0 +1,82 @@
+package no.ion.jhms;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, concurrent cache of the names of classes known to be absent from a class loader, with the message of
+ * the {@link ClassNotFoundException} thrown when they were looked up.
+ *
+ * <p>The absence of a class is permanent for a {@link HybridModuleClassLoader}: the JAR and the visible packages
+ * never change. When the cache is full, it is cleared.</p>
+ */
+class NegativeClassCache {
+    private final int maxSize;
+    private final boolean stacklessExceptions;
+    private final ConcurrentHashMap<String, String> messagesByClassName = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize             the maximum number of class names in the cache, 0 to disable the cache
+     * @param stacklessExceptions whether to throw exceptions without a stack trace, see {@link #newException(String)}
+     */
+    NegativeClassCache(int maxSize, boolean stacklessExceptions) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("The size of the negative class cache cannot be negative: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+        this.stacklessExceptions = stacklessExceptions;
+    }
+
+    /** Throws a {@link ClassNotFoundException} if the class is known to be absent. */
+    void throwIfAbsent(String className) throws ClassNotFoundException {
+        if (maxSize == 0) {
+            return;
+        }
+
+        String message = messagesByClassName.get(className);
+        if (message == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+            throw newException(message);
+        }
+    }
+
+    /** Remember that the class is absent, as signaled by the exception. */
+    void add(String className, ClassNotFoundException exception) {
+        if (maxSize == 0) {
+            return;
+        }
+
+        if (messagesByClassName.size() >= maxSize) {
+            int size = messagesByClassName.size();
+            messagesByClassName.clear();
+            evictions.add(size);
+        }
+
+        String message = exception.getMessage();
+        messagesByClassName.put(className, message == null ? className : message);
+    }
+
+    /** Returns a new exception, without a stack trace if so configured, since it is expensive to fill in. */
+    ClassNotFoundException newException(String message) {
+        return stacklessExceptions ? new StacklessClassNotFoundException(message) : new ClassNotFoundException(message);
+    }
+
+    CacheCounters counters() {
+        return new CacheCounters(hits.sum(), misses.sum(), evictions.sum(), messagesByClassName.size());
+    }
+
+    private static class StacklessClassNotFoundException extends ClassNotFoundException {
+        private static final long serialVersionUID = 1L;
+
+        private StacklessClassNotFoundException(String message) { super(message); }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() { return this; }
+    }
+}
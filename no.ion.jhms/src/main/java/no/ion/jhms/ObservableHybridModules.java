@@ -12,6 +12,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static no.ion.jhms.ExceptionUtil.uncheck;
@@ -20,16 +24,52 @@ class ObservableHybridModules implements AutoCloseable {
     /** Hybrid module JAR by name and version. */
     private final TreeMap<String, TreeMap<HybridModuleVersion, HybridModuleJar>> jars = new TreeMap<>();
 
+    /** The cache used when opening JARs, or null. */
+    private final DescriptorCache descriptorCache;
+
+    /** The number of JARs opened concurrently during discovery. */
+    private final int discoveryParallelism;
+
+    /** The pool limiting the number of JARs with open content, or null. */
+    private final OpenJarPool openJarPool;
+
+    /** The on-disk cache of JAR checksums, or null. */
+    private final ChecksumCache checksumCache;
+
+    /** The on-disk cache of uncompressed JAR entries, or null. */
+    private final ClassBytesCache classBytesCache;
+
+    ObservableHybridModules() { this(new HybridModuleContainer.Params()); }
+
+    ObservableHybridModules(HybridModuleContainer.Params params) {
+        this.descriptorCache = params.descriptorCache().map(DescriptorCache::load).orElse(null);
+        this.discoveryParallelism = params.discoveryParallelism();
+        this.openJarPool = params.openJarPool().orElse(null);
+        this.checksumCache = params.checksumCache().map(ChecksumCache::load).orElse(null);
+        this.classBytesCache = params.classBytesCache().map(ClassBytesCache::new).orElse(null);
+    }
+
     void discoverHybridModulesFromModulePath(String modulePath) {
+        var jarPaths = new ArrayList<Path>();
         for (String element : modulePath.split(":")) {
             // Non-existing elements in --module-path are ignored by both javac and java.
-            discoverHybridModules(Path.of(element), true);
+            addJarPaths(Path.of(element), true, jarPaths);
         }
+        readHybridModules(jarPaths);
+    }
+
+    void discoverHybridModules(List<Path> paths) {
+        var jarPaths = new ArrayList<Path>();
+        paths.forEach(path -> addJarPaths(path, false, jarPaths));
+        readHybridModules(jarPaths);
     }
 
-    void discoverHybridModules(List<Path> paths) { paths.forEach(this::discoverHybridModules); }
+    void discoverHybridModules(Path path) { discoverHybridModules(List.of(path)); }
 
-    void discoverHybridModules(Path path) { discoverHybridModules(path, false); }
+    /** Add the hybrid modules of JARs already opened, e.g. of a {@link ModuleImage}, in order. */
+    void addHybridModules(List<HybridModuleJar> jars) {
+        jars.forEach(jar -> addHybridModule(jar.path(), jar));
+    }
 
     boolean has(HybridModuleId id) { return Optional.ofNullable(jars.get(id.name())).map(m -> m.get(id.version())).isPresent(); }
 
@@ -54,19 +94,28 @@ class ObservableHybridModules implements AutoCloseable {
     }
 
     @Override
-    public void close() { jars.values().stream().flatMap(m -> m.values().stream()).forEach(HybridModuleJar::close); }
+    public void close() {
+        jars.values().stream().flatMap(m -> m.values().stream()).forEach(HybridModuleJar::close);
 
-    private void discoverHybridModules(Path path, boolean ignoreBadPath) {
+        // Checksums may also be computed after discovery, e.g. for diagnostics. The cache file is only written
+        // again if so.
+        if (checksumCache != null) {
+            checksumCache.save();
+        }
+    }
+
+    /** Add the path if it is a regular file, or the *.jar files of the directory if it is a directory. */
+    private static void addJarPaths(Path path, boolean ignoreBadPath, List<Path> jarPaths) {
         BasicFileAttributes attributes = uncheck(() -> Files.readAttributes(path, BasicFileAttributes.class));
 
         if (attributes.isRegularFile()) {
-            readHybridModule(path);
+            jarPaths.add(path);
         } else if (attributes.isDirectory()) {
             try (DirectoryStream<Path> directoryFiles = Files.newDirectoryStream(path)) {
                 for (Path directoryFile : directoryFiles) {
                     // subPath.endsWith() is unnecessary expensive
                     if (Files.isRegularFile(directoryFile) && directoryFile.toString().endsWith(".jar")) {
-                        readHybridModule(directoryFile);
+                        jarPaths.add(directoryFile);
                     }
                 }
             } catch (IOException e) {
@@ -77,12 +126,89 @@ class ObservableHybridModules implements AutoCloseable {
         }
     }
 
-    private void readHybridModule(Path jarPath) {
-        HybridModuleJar jar = HybridModuleJar.open(jarPath);
+    /**
+     * Open and add the JARs in order.
+     *
+     * <p>With a discovery parallelism above 1, the JARs are opened concurrently, but are still added in order
+     * afterwards: The duplicate detection, and which JAR is kept for a hybrid module ID, is the same as when
+     * opening the JARs one at a time. If a JAR fails to open, the JARs before it are added and the exception of
+     * the first failing JAR is thrown, as if opened one at a time.</p>
+     */
+    private void readHybridModules(List<Path> jarPaths) {
+        if (discoveryParallelism == 1 || jarPaths.size() <= 1) {
+            jarPaths.forEach(jarPath -> addHybridModule(jarPath, openJar(jarPath)));
+        } else {
+            List<Future<HybridModuleJar>> futures = openJarsConcurrently(jarPaths);
+            for (int i = 0; i < jarPaths.size(); ++i) {
+                try {
+                    addHybridModule(jarPaths.get(i), getOpenedJar(futures.get(i)));
+                } catch (RuntimeException | Error e) {
+                    closeOpenedJars(futures.subList(i + 1, futures.size()));
+                    throw e;
+                }
+            }
+        }
+
+        if (descriptorCache != null) {
+            descriptorCache.save();
+        }
+        if (checksumCache != null) {
+            checksumCache.save();
+        }
+    }
+
+    private List<Future<HybridModuleJar>> openJarsConcurrently(List<Path> jarPaths) {
+        List<Callable<HybridModuleJar>> tasks = jarPaths.stream()
+                .map(jarPath -> (Callable<HybridModuleJar>) () -> openJar(jarPath))
+                .collect(Collectors.toList());
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(discoveryParallelism, jarPaths.size()));
+        try {
+            // Returns when all tasks have completed, successfully or not.
+            return pool.invokeAll(tasks);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static HybridModuleJar getOpenedJar(Future<HybridModuleJar> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            // Cannot happen since the task has completed.
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void closeOpenedJars(List<Future<HybridModuleJar>> futures) {
+        for (var future : futures) {
+            try {
+                future.get().close();
+            } catch (ExecutionException | InterruptedException | RuntimeException e) {
+                // The JAR failed to open, or failed to close: Ignore, as an earlier exception is being thrown.
+            }
+        }
+    }
+
+    private HybridModuleJar openJar(Path jarPath) {
+        HybridModuleJar jar = descriptorCache == null ? HybridModuleJar.open(jarPath) : descriptorCache.open(jarPath);
+        jar.setChecksumCache(checksumCache);
+        jar.setClassBytesCache(classBytesCache);
+        return jar;
+    }
+
+    private void addHybridModule(Path jarPath, HybridModuleJar jar) {
         try {
             HybridModuleId id = jar.hybridModuleId();
             HybridModuleJar currentJar = jars.computeIfAbsent(id.name(), key -> new TreeMap<>()).putIfAbsent(id.version(), jar);
             if (currentJar == null) {
+                jar.setOpenJarPool(openJarPool);
                 jar = null; // avoid close in 'finally'
             } else if (!jar.checksumEqual(currentJar)) {
                 throw new FindException("Both " + jarPath + " and " + currentJar.path() + " claim to be hybrid module " + id.toString());
@@ -0,0 +1,104 @@
+package no.ion.jhms;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of hybrid modular JARs read with a module reader, which keeps the JAR file open, by closing the
+ * least recently used JARs. A closed JAR is opened again transparently when a class or resource is needed.
+ *
+ * <p>A JAR that is memory-mapped, see {@link MappedJarFile}, keeps no file open and is not limited by the pool: The
+ * mapping is released by the garbage collector once unreachable, and cannot be unmapped deterministically since
+ * class bytes and resources may be slices of it, so closing a mapped JAR would not bound the mapped memory. Most
+ * JARs are mapped, while e.g. multi-release JARs are read with a module reader.</p>
+ *
+ * <p>A pool may be shared by several containers, see {@link HybridModuleContainer.Params#openJarPool(OpenJarPool)}.
+ * A use of an open JAR records the time of the use in the JAR, without taking the lock of the pool. The lock is
+ * taken when a JAR is opened or closed, and the least recently used JARs are found by scanning the open JARs.</p>
+ */
+public class OpenJarPool {
+    private final int maxOpenJars;
+
+    /** The JARs with open content in the pool. */
+    private final HashSet<HybridModuleJar> openJars = new HashSet<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /** @param maxOpenJars the maximum number of JARs read with a module reader that are open */
+    public OpenJarPool(int maxOpenJars) {
+        if (maxOpenJars < 1) {
+            throw new IllegalArgumentException("maxOpenJars must be positive: " + maxOpenJars);
+        }
+        this.maxOpenJars = maxOpenJars;
+    }
+
+    /**
+     * The hits are uses of JARs that were open, the misses are uses requiring a JAR to be opened, and the evictions
+     * are JARs closed to stay within the limit.
+     */
+    public CacheCounters counters() {
+        int size;
+        synchronized (this) {
+            size = openJars.size();
+        }
+        return new CacheCounters(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    /** Called on each use of the open content of the JAR. */
+    void accessed(HybridModuleJar jar) {
+        hits.increment();
+        jar.setLastUsed(System.nanoTime());
+    }
+
+    /**
+     * Called with the monitor of the JAR held, after its content has been opened. Returns the least recently used
+     * JARs to be closed with {@link #evict(List)} once the monitor has been released.
+     */
+    synchronized List<HybridModuleJar> opened(HybridModuleJar jar) {
+        misses.increment();
+        jar.setLastUsed(System.nanoTime());
+        openJars.add(jar);
+
+        var victims = new ArrayList<HybridModuleJar>();
+        while (openJars.size() > maxOpenJars) {
+            HybridModuleJar victim = leastRecentlyUsed(jar);
+            openJars.remove(victim);
+            victims.add(victim);
+        }
+        return victims;
+    }
+
+    /** Close the content of the JARs returned by {@link #opened(HybridModuleJar)}, unless they have been reopened. */
+    void evict(List<HybridModuleJar> victims) {
+        for (HybridModuleJar victim : victims) {
+            if (victim.closeContentIfEvicted(this)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /** Whether the JAR is among the open JARs of the pool. */
+    synchronized boolean contains(HybridModuleJar jar) { return openJars.contains(jar); }
+
+    /** Called with the monitor of the JAR held, when its content has been closed other than by this pool. */
+    synchronized void closed(HybridModuleJar jar) { openJars.remove(jar); }
+
+    /** Returns the open JAR used least recently, other than the JAR just opened, which is never a victim. */
+    private HybridModuleJar leastRecentlyUsed(HybridModuleJar opened) {
+        HybridModuleJar leastRecentlyUsed = null;
+        long leastRecentlyUsedAt = 0;
+        for (HybridModuleJar jar : openJars) {
+            // The difference, since System.nanoTime() may overflow.
+            long lastUsed = jar.lastUsed();
+            if (jar != opened && (leastRecentlyUsed == null || lastUsed - leastRecentlyUsedAt < 0)) {
+                leastRecentlyUsed = jar;
+                leastRecentlyUsedAt = lastUsed;
+            }
+        }
+        return leastRecentlyUsed;
+    }
+}
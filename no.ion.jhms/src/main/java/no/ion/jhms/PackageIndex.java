@@ -0,0 +1,110 @@
+package no.ion.jhms;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable map from package name to some value, e.g. the module owning the package.
+ *
+ * <p>The index is an open-addressing hash table with linear probing, and is intended for the class loading path:
+ * {@link #getByClassName(String)} hashes and compares the package prefix of a class name in place, without
+ * allocating the package name with {@link PackageUtil#getPackageName(String)}.</p>
+ *
+ * @param <T> the type of the values
+ */
+class PackageIndex<T> {
+    private static final PackageIndex<?> EMPTY = new PackageIndex<>(Map.of());
+
+    private final String[] packages;
+    private final Object[] values;
+    private final int mask;
+    private final int size;
+
+    @SuppressWarnings("unchecked")
+    static <T> PackageIndex<T> empty() { return (PackageIndex<T>) EMPTY; }
+
+    static <T> PackageIndex<T> of(Map<String, ? extends T> valuesByPackage) {
+        return valuesByPackage.isEmpty() ? empty() : new PackageIndex<>(valuesByPackage);
+    }
+
+    private PackageIndex(Map<String, ? extends T> valuesByPackage) {
+        // Keep the load factor at or below 0.5 to keep the probe sequences short.
+        int capacity = Integer.highestOneBit(Math.max(1, valuesByPackage.size()) * 2 - 1) << 1;
+        this.packages = new String[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.size = valuesByPackage.size();
+
+        valuesByPackage.forEach((packageName, value) -> {
+            int index = spread(packageName.hashCode()) & mask;
+            while (packages[index] != null) {
+                index = (index + 1) & mask;
+            }
+            packages[index] = packageName;
+            values[index] = value;
+        });
+    }
+
+    int size() { return size; }
+
+    /** Returns the value of the package, or null if absent. */
+    T get(String packageName) { return get(packageName, packageName.length()); }
+
+    /**
+     * Returns the value of the package of a class, or null if absent.
+     *
+     * @param className must be of the form [package.]simpleName
+     */
+    T getByClassName(String className) { return get(className, packageLength(className)); }
+
+    /** Returns the value of the package given by the first {@code length} characters of {@code name}. */
+    T get(String name, int length) { return get(name, length, hash(name, length)); }
+
+    /** As {@link #get(String, int)}, with the {@link #hash(String, int) hash} of the package already computed. */
+    @SuppressWarnings("unchecked")
+    T get(String name, int length, int hash) {
+        for (int index = spread(hash) & mask; ; index = (index + 1) & mask) {
+            String packageName = packages[index];
+            if (packageName == null) {
+                return null;
+            }
+
+            if (packageName.length() == length && packageName.regionMatches(0, name, 0, length)) {
+                return (T) values[index];
+            }
+        }
+    }
+
+    /** The length of the package prefix of the class name. */
+    static int packageLength(String className) {
+        int lastDot = className.lastIndexOf('.');
+        return lastDot == -1 ? 0 : lastDot;
+    }
+
+    /** Returns the hash of the first {@code length} characters of {@code name}, to look up in several indices. */
+    static int hash(String name, int length) {
+        // Equal to name.substring(0, length).hashCode(), see String::hashCode.
+        int hash = 0;
+        for (int i = 0; i < length; ++i) {
+            hash = 31 * hash + name.charAt(i);
+        }
+        return hash;
+    }
+
+    boolean containsClassName(String className) { return getByClassName(className) != null; }
+
+    /** Returns a (sorted) copy of the index as a map. */
+    @SuppressWarnings("unchecked")
+    TreeMap<String, T> toTreeMap() {
+        var map = new TreeMap<String, T>();
+        for (int i = 0; i < packages.length; ++i) {
+            if (packages[i] != null) {
+                map.put(packages[i], (T) values[i]);
+            }
+        }
+        return map;
+    }
+
+    /** Mix the high bits into the low bits, since only the low bits are used to index the table. */
+    static int spread(int hash) { return hash ^ (hash >>> 16); }
+}
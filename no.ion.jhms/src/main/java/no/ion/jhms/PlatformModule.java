@@ -20,7 +20,7 @@ class PlatformModule extends BaseModule {
     private final HashMap<String, Boolean> transitiveByRequires;
     private final Module nativeModule;
 
-    private volatile Set<String> packagesVisibleToHybridModules = null;
+    private final Set<String> packagesVisibleToHybridModules;
 
     private PlatformModule(String moduleName,
                            Set<String> packages,
@@ -40,6 +40,9 @@ class PlatformModule extends BaseModule {
 
         reads.add(this);
         readClosure.add(this);
+
+        // Computed up front, as the platform module is shared by all hybrid module containers.
+        this.packagesVisibleToHybridModules = Set.copyOf(unqualifiedExports());
     }
 
     String name() { return name; }
@@ -49,18 +52,13 @@ class PlatformModule extends BaseModule {
 
     @Override
     Set<String> packagesVisibleTo(BaseModule module) {
-        // Assume all hybrid modules have the same visibility of platform modules.
-        // This allows us to cache the result of the calculation.
-
-        Set<String> packages = packagesVisibleToHybridModules;
-        if (packages == null) {
-            packages = super.packagesVisibleTo(module);
-            packagesVisibleToHybridModules = packages;
-        }
-
-        return packages;
+        // Assume all hybrid modules have the same visibility of platform modules, the unqualified exports.
+        // This allows us to compute it once, and share it in a SharedPackageIndex.
+        return packagesVisibleToHybridModules;
     }
 
+    Set<String> packagesVisibleToHybridModules() { return packagesVisibleToHybridModules; }
+
     void fillModuleGraph(ModuleGraph graph) {
         if (graph.containsPlatformModule(name) || graph.params().excludePlatformModules() || graph.params().moduleExcluded(name)) {
             return;
@@ -1,46 +1,96 @@
 // Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package no.ion.jhms;
 
+import java.io.UncheckedIOException;
 import java.lang.module.FindException;
-import java.lang.module.ModuleDescriptor;
 import java.lang.module.ModuleFinder;
-import java.lang.module.ModuleReference;
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Responsible for resolving a platform module name to {@link PlatformModule}.
+ * Responsible for resolving a platform module name to {@link PlatformModule}. Resolving is thread-safe, and a
+ * platform module is only resolved once.
+ *
+ * <p>The platform modules are the same for all hybrid module containers of the JVM, which share the
+ * {@link #shared() process-wide} instance: A platform module, with its read closure, exports and the packages
+ * visible to hybrid modules, is resolved the first time any container requires it, and is immutable.</p>
+ *
+ * <p>The platform modules are found by {@link ModuleFinder#ofSystem()}, or read from a {@link PlatformModuleIndex}
+ * if the {@value #INDEX_PROPERTY} system property is set, see {@link #withIndex(Path)}.</p>
  *
  * @author hakonhall
  */
 public class PlatformModuleContainer {
+    /** The system property with the path of the platform module index of the shared instance, if any. */
+    static final String INDEX_PROPERTY = "no.ion.jhms.platformModuleIndex";
+
+    private static final System.Logger logger = System.getLogger(PlatformModuleContainer.class.getName());
+
+    /** The system module finder, or null if the platform modules are read from the index. */
     private final ModuleFinder systemModuleFinder;
-    private final TreeMap<String, PlatformModule> platformModules = new TreeMap<>();
+
+    /** The index of the platform modules, or null if they are found by the system module finder. */
+    private final PlatformModuleIndex index;
+
+    private final ConcurrentHashMap<String, PlatformModule> platformModules = new ConcurrentHashMap<>();
+    private final SharedPackageIndex packageIndex = new SharedPackageIndex();
+
+    /** Returns the instance shared by all hybrid module containers of the JVM. */
+    static PlatformModuleContainer shared() { return SharedHolder.INSTANCE; }
+
+    private static class SharedHolder {
+        private static final PlatformModuleContainer INSTANCE = Optional.ofNullable(System.getProperty(INDEX_PROPERTY))
+                .map(index -> withIndex(Path.of(index)))
+                .orElseGet(PlatformModuleContainer::new);
+    }
 
     PlatformModuleContainer() {
-        this(ModuleFinder.ofSystem());
+        this(ModuleFinder.ofSystem(), null);
     }
 
-    private PlatformModuleContainer(ModuleFinder systemModuleFinder) {
+    private PlatformModuleContainer(ModuleFinder systemModuleFinder, PlatformModuleIndex index) {
         this.systemModuleFinder = systemModuleFinder;
+        this.index = index;
     }
 
+    /**
+     * Returns a container reading the platform modules from the index file. If the file does not exist, is invalid,
+     * or was written for another java.home or Java version, the platform modules are found by the system module
+     * finder instead, and the index is written for later JVMs. Failing to write the index is logged.
+     */
+    static PlatformModuleContainer withIndex(Path file) { return withIndex(file, PlatformModuleIndex.key()); }
+
+    static PlatformModuleContainer withIndex(Path file, String key) {
+        Optional<PlatformModuleIndex> index = PlatformModuleIndex.open(file, key);
+        if (index.isPresent()) {
+            return new PlatformModuleContainer(null, index.get());
+        }
+
+        ModuleFinder systemModuleFinder = ModuleFinder.ofSystem();
+        try {
+            PlatformModuleIndex.write(file, systemModuleFinder, key);
+        } catch (UncheckedIOException e) {
+            logger.log(System.Logger.Level.WARNING, "Failed to write the platform module index " + file, e);
+        }
+
+        return new PlatformModuleContainer(systemModuleFinder, null);
+    }
+
+    /** Whether the platform modules are read from an index, instead of found by the system module finder. */
+    boolean usesIndex() { return index != null; }
+
     TreeMap<String, PlatformModule> platformModules() { return new TreeMap<>(platformModules); }
 
     Optional<PlatformModule> resolve(String name) {
         PlatformModule platformModule = platformModules.get(name);
         if (platformModule != null) return Optional.of(platformModule);
 
-        // Because jlink is not supported, the system module finder is 1:1 with platform modules:
-        //   1. The Java SE Platform modules that must start with "java.", and
-        //   2. the other OpenJDK modules must start with "jdk." (JEP200). But non-OpenJDK may have other modules.
-
-        Optional<ModuleReference> moduleReference = systemModuleFinder.find(name);
-        if (moduleReference.isPresent()) {
-            platformModule = resolve(moduleReference.get().descriptor());
-            platformModules.put(name, platformModule);
-            return Optional.of(platformModule);
-        } else {
+        // The names of hybrid modules are not cached, as that would grow with every hybrid module of every container
+        // of the JVM: Finding a module with the system module finder or index is a map lookup, and needs no lock.
+        Optional<PlatformModuleIndex.Entry> entry = find(name);
+        if (entry.isEmpty()) {
             if (name.startsWith("java.") || // JLS11 §6.1
                     name.startsWith("jdk.")) { // JEP200
                 throw new FindException("Failed to find platform module: " + name);
@@ -48,40 +98,61 @@ public class PlatformModuleContainer {
 
             return Optional.empty();
         }
+
+        synchronized (this) {
+            return resolveLocked(name, entry.get());
+        }
+    }
+
+    private Optional<PlatformModuleIndex.Entry> find(String name) {
+        if (index != null) {
+            return index.get(name);
+        }
+
+        return systemModuleFinder.find(name)
+                .map(moduleReference -> PlatformModuleIndex.Entry.of(moduleReference.descriptor()));
+    }
+
+    // Because jlink is not supported, the system module finder is 1:1 with platform modules:
+    //   1. The Java SE Platform modules that must start with "java.", and
+    //   2. the other OpenJDK modules must start with "jdk." (JEP200). But non-OpenJDK may have other modules.
+    private Optional<PlatformModule> resolveLocked(String name, PlatformModuleIndex.Entry entry) {
+        PlatformModule platformModule = platformModules.get(name);
+        if (platformModule != null) return Optional.of(platformModule);
+
+        platformModule = resolve(entry);
+        packageIndex.register(platformModule, platformModule.packagesVisibleToHybridModules());
+        platformModules.put(name, platformModule);
+        return Optional.of(platformModule);
     }
 
     Optional<PlatformModule> get(String name) { return Optional.ofNullable(platformModules.get(name)); }
 
-    private PlatformModule resolve(ModuleDescriptor descriptor) {
-        var builder = new PlatformModule.Builder(descriptor.name());
+    /** Whether the name is of a platform module found by the system module finder or index, resolved or not. */
+    boolean isObservable(String name) {
+        return platformModules.containsKey(name) ||
+                (index != null ? index.contains(name) : systemModuleFinder.find(name).isPresent());
+    }
+
+    /** The packages visible to hybrid modules, of the resolved platform modules. */
+    SharedPackageIndex packageIndex() { return packageIndex; }
 
-        builder.setPackages(descriptor.packages());
+    private PlatformModule resolve(PlatformModuleIndex.Entry entry) {
+        var builder = new PlatformModule.Builder(entry.name());
 
-        for (var requires : descriptor.requires()) {
-            if (requires.modifiers().contains(ModuleDescriptor.Requires.Modifier.STATIC)) {
-                // The behavior is mandated by java.lang.module package documentation, and is difficult to
-                // get exactly right. From a scan of OpenJDK 12, no platform modules use the static modifier,
-                // except the jdk.scripting.nashorn.shell module which is deprecated since 11.
-                //
-                // We therefore take some freedom in handling 'static' as we wish - and choose to ignore it.
-                continue;
-            }
+        builder.setPackages(entry.packages());
 
-            String requiresName = requires.name();
+        entry.transitiveByRequires().forEach((requiresName, transitive) -> {
             Optional<PlatformModule> requiresModule = resolve(requiresName);
             if (requiresModule.isPresent()) {
-                builder.addRequires(
-                        requiresModule.get(),
-                        requires.modifiers().contains(ModuleDescriptor.Requires.Modifier.TRANSITIVE));
+                builder.addRequires(requiresModule.get(), transitive);
             } else {
-                throw new FindException("Platform module " + descriptor.name() + " requires " + requiresName +
+                throw new FindException("Platform module " + entry.name() + " requires " + requiresName +
                         ", but it was not found with ModuleFinder.ofSystem()");
             }
-        }
+        });
 
-        for (var exports : descriptor.exports()) {
-            builder.addExports(exports.source(), exports.targets());
-        }
+        entry.exports().forEach(builder::addExports);
 
         return builder.build();
     }
@@ -0,0 +1,242 @@
+package no.ion.jhms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * An on-disk index of the platform module graph found by {@link ModuleFinder#ofSystem()}, for
+ * {@link PlatformModuleContainer} to resolve platform modules without creating the system module finder.
+ *
+ * <p>The index has, for each platform module, the requires edges between platform modules as resolved by the
+ * container, i.e. without 'requires static', the exports, and the packages. The index is keyed by
+ * {@link #key() java.home and Runtime.version()}, and is ignored if written by another JDK. Opening the index maps
+ * the file and reads the table of modules: A module is read from the mapping the first time it is resolved.</p>
+ *
+ * <p>Layout, all integers being big-endian:</p>
+ *
+ * <pre>
+ *   int magic "JHMP", int version, UTF key, int module count
+ *   for each module: UTF name, int offset
+ *   for each module: int package count, UTF package...,
+ *                    int requires count, (UTF name, boolean transitive)...,
+ *                    int exports count, (UTF package, int target count, UTF target...)...
+ *   the offsets being relative to the start of the first module
+ * </pre>
+ */
+class PlatformModuleIndex {
+    private static final int MAGIC = 0x4a484d50; // "JHMP"
+    private static final int FORMAT_VERSION = 1;
+
+    private final ByteBuffer modules;
+
+    /** The offset of each module in {@link #modules}, by module name. */
+    private final HashMap<String, Integer> offsets;
+
+    /**
+     * Returns the key of the index of this JVM: the java.home system property and the runtime version. The
+     * java.runtime.version system property is the string of {@link Runtime#version()}, which is not called since
+     * parsing the version takes tens of milliseconds at startup.
+     */
+    static String key() { return System.getProperty("java.home") + " " + System.getProperty("java.runtime.version"); }
+
+    /** Returns the index, or empty if the file does not exist, is invalid, or has a different key. */
+    static Optional<PlatformModuleIndex> open(Path file, String key) {
+        ByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return Optional.empty();
+            }
+
+            // The mapping stays valid after the channel has been closed.
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+
+        try {
+            if (mapping.getInt() != MAGIC || mapping.getInt() != FORMAT_VERSION || !readUTF(mapping).equals(key)) {
+                return Optional.empty();
+            }
+
+            int moduleCount = mapping.getInt();
+            var offsets = new HashMap<String, Integer>(moduleCount * 4 / 3 + 1);
+            for (int i = 0; i < moduleCount; ++i) {
+                offsets.put(readUTF(mapping), mapping.getInt());
+            }
+
+            return Optional.of(new PlatformModuleIndex(mapping.slice(), offsets));
+        } catch (RuntimeException e) {
+            // A truncated or otherwise invalid index is like a missing index.
+            return Optional.empty();
+        }
+    }
+
+    private PlatformModuleIndex(ByteBuffer modules, HashMap<String, Integer> offsets) {
+        this.modules = modules;
+        this.offsets = offsets;
+    }
+
+    boolean contains(String name) { return offsets.containsKey(name); }
+
+    /** Returns the entry of the module, or empty if there is no platform module with the name. */
+    Optional<Entry> get(String name) {
+        Integer offset = offsets.get(name);
+        if (offset == null) {
+            return Optional.empty();
+        }
+
+        ByteBuffer buffer = modules.duplicate().position(offset);
+
+        int packageCount = buffer.getInt();
+        var packages = new TreeSet<String>();
+        for (int i = 0; i < packageCount; ++i) {
+            packages.add(readUTF(buffer));
+        }
+
+        int requiresCount = buffer.getInt();
+        var requires = new LinkedHashMap<String, Boolean>();
+        for (int i = 0; i < requiresCount; ++i) {
+            requires.put(readUTF(buffer), buffer.get() != 0);
+        }
+
+        int exportsCount = buffer.getInt();
+        var exports = new TreeMap<String, Set<String>>();
+        for (int i = 0; i < exportsCount; ++i) {
+            String packageName = readUTF(buffer);
+            int targetCount = buffer.getInt();
+            var targets = new TreeSet<String>();
+            for (int j = 0; j < targetCount; ++j) {
+                targets.add(readUTF(buffer));
+            }
+            exports.put(packageName, targets);
+        }
+
+        return Optional.of(new Entry(name, packages, requires, exports));
+    }
+
+    /** Write the index of the modules of the system module finder, replacing any existing file atomically. */
+    static void write(Path file, ModuleFinder systemModuleFinder, String key) {
+        List<Entry> modules = systemModuleFinder.findAll().stream()
+                .map(ModuleReference::descriptor)
+                .sorted(Comparator.comparing(ModuleDescriptor::name))
+                .map(Entry::of)
+                .collect(Collectors.toList());
+
+        CacheFile.write(file, MAGIC, FORMAT_VERSION, out -> {
+            var content = new ByteArrayOutputStream();
+            var contentOut = new DataOutputStream(content);
+            var offsets = new ArrayList<Integer>(modules.size());
+            for (var module : modules) {
+                offsets.add(contentOut.size());
+                module.write(contentOut);
+            }
+            contentOut.flush();
+
+            out.writeUTF(key);
+            out.writeInt(modules.size());
+            for (int i = 0; i < modules.size(); ++i) {
+                out.writeUTF(modules.get(i).name);
+                out.writeInt(offsets.get(i));
+            }
+            content.writeTo(out);
+        });
+    }
+
+    /** The entry of a platform module of the system module finder, as needed to resolve it. */
+    static class Entry {
+        private final String name;
+        private final Set<String> packages;
+        private final Map<String, Boolean> transitiveByRequires;
+        private final Map<String, Set<String>> exports;
+
+        static Entry of(ModuleDescriptor descriptor) {
+            var requires = new LinkedHashMap<String, Boolean>();
+            for (var moduleRequires : descriptor.requires()) {
+                if (moduleRequires.modifiers().contains(ModuleDescriptor.Requires.Modifier.STATIC)) {
+                    // The behavior is mandated by java.lang.module package documentation, and is difficult to
+                    // get exactly right. From a scan of OpenJDK 12, no platform modules use the static modifier,
+                    // except the jdk.scripting.nashorn.shell module which is deprecated since 11.
+                    //
+                    // We therefore take some freedom in handling 'static' as we wish - and choose to ignore it.
+                    continue;
+                }
+
+                requires.put(moduleRequires.name(),
+                             moduleRequires.modifiers().contains(ModuleDescriptor.Requires.Modifier.TRANSITIVE));
+            }
+
+            var exports = new TreeMap<String, Set<String>>();
+            for (var moduleExports : descriptor.exports()) {
+                exports.put(moduleExports.source(), moduleExports.targets());
+            }
+
+            return new Entry(descriptor.name(), descriptor.packages(), requires, exports);
+        }
+
+        private Entry(String name, Set<String> packages, Map<String, Boolean> transitiveByRequires,
+                       Map<String, Set<String>> exports) {
+            this.name = name;
+            this.packages = packages;
+            this.transitiveByRequires = transitiveByRequires;
+            this.exports = exports;
+        }
+
+        String name() { return name; }
+        Set<String> packages() { return packages; }
+
+        /** Whether each required platform module is required transitively, by module name, in order. */
+        Map<String, Boolean> transitiveByRequires() { return transitiveByRequires; }
+
+        /** The targets of each exported package, which are empty for an unqualified export. */
+        Map<String, Set<String>> exports() { return exports; }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(packages.size());
+            for (String packageName : new TreeSet<>(packages)) {
+                out.writeUTF(packageName);
+            }
+
+            out.writeInt(transitiveByRequires.size());
+            for (var requires : transitiveByRequires.entrySet()) {
+                out.writeUTF(requires.getKey());
+                out.writeBoolean(requires.getValue());
+            }
+
+            out.writeInt(exports.size());
+            for (var moduleExports : exports.entrySet()) {
+                out.writeUTF(moduleExports.getKey());
+                out.writeInt(moduleExports.getValue().size());
+                for (String target : new TreeSet<>(moduleExports.getValue())) {
+                    out.writeUTF(target);
+                }
+            }
+        }
+    }
+
+    private static String readUTF(ByteBuffer buffer) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -272,6 +272,8 @@ public class RootHybridModule {
     /** Returns the class loader associated with the hybrid module. */
     public HybridModuleClassLoader getClassLoader() { return root.getClassLoader(); }
 
+    HybridModule hybridModule() { return root; }
+
     @Override
     public String toString() { return root.id().toString(); }
 }
@@ -0,0 +1,123 @@
+package no.ion.jhms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The packages exported to all modules by each registered module, shared by the hybrid modules reading them, see
+ * {@link VisiblePackages}.
+ *
+ * <p>Each registered module is assigned an ordinal, used in the per-module readability bit sets. A package may be
+ * exported by several registered modules, as long as no module reads more than one of them.</p>
+ *
+ * <p>Registering is thread-safe, and updates the index in place: The index is an open-addressing hash table with
+ * linear probing, like {@link PackageIndex}, of immutable entries. An entry is only ever added to an empty slot or
+ * replaced, and the table is copied only when it grows, so registering a module costs time proportional to its
+ * packages. Lookups are lock-free.</p>
+ */
+class SharedPackageIndex {
+    // Guarded by this.
+    private final ArrayList<BaseModule> modules = new ArrayList<>();
+    private final ArrayList<List<String>> packagesByOrdinal = new ArrayList<>();
+    private int packageCount = 0;
+
+    /**
+     * The hash table, with a length being a power of 2 and a load factor of at most 0.5. Written after each change,
+     * so a lookup reading it sees all registered packages.
+     */
+    private volatile Entry[] table = new Entry[16];
+
+    private static class Entry {
+        private final String packageName;
+        private final BaseModule[] owners;
+
+        private Entry(String packageName, BaseModule[] owners) {
+            this.packageName = packageName;
+            this.owners = owners;
+        }
+    }
+
+    /** Register the module with the packages it exports to all modules, and set its ordinal. */
+    synchronized void register(BaseModule module, Collection<String> packages) {
+        module.setOrdinal(modules.size());
+        modules.add(module);
+        packagesByOrdinal.add(List.copyOf(packages));
+
+        Entry[] table = this.table;
+        if (2 * (packageCount + packages.size()) > table.length) {
+            table = resize(table, packageCount + packages.size());
+        }
+
+        for (String packageName : packages) {
+            int mask = table.length - 1;
+            int index = PackageIndex.spread(packageName.hashCode()) & mask;
+            for (Entry entry; (entry = table[index]) != null; index = (index + 1) & mask) {
+                if (entry.packageName.equals(packageName)) {
+                    break;
+                }
+            }
+
+            Entry entry = table[index];
+            if (entry == null) {
+                table[index] = new Entry(packageName, new BaseModule[] { module });
+                ++packageCount;
+            } else {
+                BaseModule[] owners = Arrays.copyOf(entry.owners, entry.owners.length + 1);
+                owners[owners.length - 1] = module;
+                table[index] = new Entry(packageName, owners);
+            }
+        }
+
+        this.table = table;
+    }
+
+    synchronized int size() { return modules.size(); }
+
+    /** The number of packages exported to all modules by the registered modules. */
+    synchronized int packageCount() { return packageCount; }
+
+    /** Returns the module with the given ordinal. */
+    synchronized BaseModule module(int ordinal) { return modules.get(ordinal); }
+
+    /** Returns the packages the module with the given ordinal was registered with. */
+    synchronized List<String> packages(int ordinal) { return packagesByOrdinal.get(ordinal); }
+
+    /** Returns the modules exporting the package to all modules, or null if none, see {@link PackageIndex#get(String, int, int)}. */
+    BaseModule[] get(String name, int length, int hash) {
+        Entry[] table = this.table;
+        int mask = table.length - 1;
+        for (int index = PackageIndex.spread(hash) & mask; ; index = (index + 1) & mask) {
+            Entry entry = table[index];
+            if (entry == null) {
+                return null;
+            }
+
+            if (entry.packageName.length() == length && entry.packageName.regionMatches(0, name, 0, length)) {
+                return entry.owners;
+            }
+        }
+    }
+
+    /** Returns a new table with room for the given number of packages, with the entries of the table. */
+    private static Entry[] resize(Entry[] table, int packageCount) {
+        int capacity = table.length;
+        while (2 * packageCount > capacity) {
+            capacity *= 2;
+        }
+
+        var resized = new Entry[capacity];
+        int mask = capacity - 1;
+        for (Entry entry : table) {
+            if (entry != null) {
+                int index = PackageIndex.spread(entry.packageName.hashCode()) & mask;
+                while (resized[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                resized[index] = entry;
+            }
+        }
+        return resized;
+    }
+}
@@ -0,0 +1,133 @@
+package no.ion.jhms;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An on-disk cache of the output of the class transformers of hybrid modules, see {@link ClassTransformation}.
+ *
+ * <p>The cache is a directory with a file per JAR and list of transformer versions, named by the SHA-256 checksum
+ * of the JAR and the SHA-256 of the versions. The file has, for each class, the transformed bytes, or records that
+ * the class was left unchanged. It is read in full the first time a class of the JAR is defined, and kept in
+ * memory until the container is closed.</p>
+ *
+ * <p>A file is rewritten by {@link #save()} if classes were transformed since it was read, when the container is
+ * closed. Failing to write a file is logged, since the cache is only an optimization.</p>
+ */
+class TransformedClassCache {
+    private static final System.Logger logger = System.getLogger(TransformedClassCache.class.getName());
+    private static final int MAGIC = 0x4a484d54; // "JHMT"
+    private static final int FORMAT_VERSION = 2;
+
+    private final Path directory;
+    private final ConcurrentHashMap<Path, Classes> classesByFile = new ConcurrentHashMap<>();
+
+    TransformedClassCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /** Returns the cached classes of the JAR, as transformed by the transformers. */
+    Classes classes(HybridModuleJar jar, List<ClassTransformer> transformers) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        for (var transformer : transformers) {
+            sha256.update((transformer.version() + '\n').getBytes(StandardCharsets.UTF_8));
+        }
+
+        Path file = directory.resolve(jar.sha256String() + "-" + HybridModuleJar.bytesToHex(sha256.digest()) + ".classes");
+        return classesByFile.computeIfAbsent(file, Classes::load);
+    }
+
+    /** Write the files with classes transformed since they were read, replacing each file atomically. */
+    void save() { classesByFile.values().forEach(Classes::save); }
+
+    /** The classes of a JAR and list of transformer versions, backed by a file of the cache. */
+    static class Classes {
+        private final Path file;
+
+        /** The transformed bytes by class name, or empty if the class was left unchanged. */
+        private final ConcurrentHashMap<String, Optional<byte[]>> classes;
+
+        private final LongAdder misses = new LongAdder();
+
+        /** The number of misses when the file was last saved. */
+        private long savedMisses = 0;
+
+        private static Classes load(Path file) {
+            return new Classes(file, read(file).orElseGet(HashMap::new));
+        }
+
+        private Classes(Path file, Map<String, Optional<byte[]>> classes) {
+            this.file = file;
+            this.classes = new ConcurrentHashMap<>(classes);
+        }
+
+        /** Returns the transformed bytes, empty if the class was left unchanged, or null if the class is not cached. */
+        Optional<byte[]> get(String className) { return classes.get(className); }
+
+        /** Cache the transformed bytes of the class, or empty if the class was left unchanged. */
+        void put(String className, Optional<byte[]> bytes) {
+            classes.put(className, bytes);
+            misses.increment();
+        }
+
+        /** Write the file if a class has been put since the last save. */
+        synchronized void save() {
+            long misses = this.misses.sum();
+            if (misses == savedMisses) {
+                return;
+            }
+            savedMisses = misses;
+
+            var entries = new HashMap<>(classes);
+            try {
+                CacheFile.write(file, MAGIC, FORMAT_VERSION, out -> {
+                    out.writeInt(entries.size());
+                    for (var entry : entries.entrySet()) {
+                        out.writeUTF(entry.getKey());
+                        Optional<byte[]> bytes = entry.getValue();
+                        out.writeBoolean(bytes.isPresent());
+                        if (bytes.isPresent()) {
+                            out.writeInt(bytes.get().length);
+                            out.write(bytes.get());
+                        }
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                logger.log(System.Logger.Level.WARNING, "Failed to save the transformed classes " + file, e);
+            }
+        }
+
+        private static Optional<Map<String, Optional<byte[]>>> read(Path file) {
+            return CacheFile.read(file, MAGIC, FORMAT_VERSION, in -> {
+                int size = in.readInt();
+                var classes = new HashMap<String, Optional<byte[]>>();
+                for (int i = 0; i < size; ++i) {
+                    String className = in.readUTF();
+                    if (in.readBoolean()) {
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        classes.put(className, Optional.of(bytes));
+                    } else {
+                        classes.put(className, Optional.empty());
+                    }
+                }
+                return classes;
+            });
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package no.ion.jhms;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The owner of each package visible to a hybrid module, either a {@link PlatformModule} or a {@link HybridModule}.
+ *
+ * <p>The packages exported to all modules are looked up in the {@link SharedPackageIndex} of the platform modules
+ * and of the hybrid modules, and are visible if the owner is read by the hybrid module, as given by a bit set of
+ * ordinals. Only the packages of the hybrid module itself and the qualified exports to it are kept per hybrid
+ * module, so the heap is not proportional to the number of hybrid modules times the packages visible to each, e.g.
+ * the packages of java.base.</p>
+ */
+class VisiblePackages {
+    private final PackageIndex<BaseModule> privatePackages;
+    private final SharedPackageIndex platformPackages;
+    private final BitSet platformReads;
+    private final SharedPackageIndex hybridPackages;
+    private final BitSet hybridReads;
+
+    /**
+     * @param privatePackages  the packages of the hybrid module and the packages exported to it by qualified exports
+     * @param platformReads    the platform modules read by the hybrid module, registered in platformPackages
+     * @param hybridReads      the hybrid modules read by the hybrid module, registered in hybridPackages
+     */
+    VisiblePackages(Map<String, BaseModule> privatePackages,
+                    SharedPackageIndex platformPackages,
+                    Collection<PlatformModule> platformReads,
+                    SharedPackageIndex hybridPackages,
+                    Collection<HybridModule> hybridReads) {
+        this.privatePackages = PackageIndex.of(privatePackages);
+        this.platformPackages = platformPackages;
+        this.platformReads = ordinals(platformReads);
+        this.hybridPackages = hybridPackages;
+        this.hybridReads = ordinals(hybridReads);
+    }
+
+    /** Returns the owner of the package, or null if not visible. */
+    BaseModule get(String packageName) { return get(packageName, packageName.length()); }
+
+    /**
+     * Returns the owner of the package of a class, or null if not visible.
+     *
+     * @param className must be of the form [package.]simpleName
+     */
+    BaseModule getByClassName(String className) { return get(className, PackageIndex.packageLength(className)); }
+
+    /** The number of packages kept for this hybrid module only. */
+    int privatePackageCount() { return privatePackages.size(); }
+
+    /** Returns a (sorted) map of the visible packages to their owners. */
+    TreeMap<String, BaseModule> toTreeMap() {
+        var map = new TreeMap<String, BaseModule>(privatePackages.toTreeMap());
+        addReadOwners(map, platformPackages, platformReads);
+        addReadOwners(map, hybridPackages, hybridReads);
+        return map;
+    }
+
+    private BaseModule get(String name, int length) {
+        int hash = PackageIndex.hash(name, length);
+
+        BaseModule owner = privatePackages.get(name, length, hash);
+        if (owner != null) {
+            return owner;
+        }
+
+        owner = readOwner(platformPackages.get(name, length, hash), platformReads);
+        if (owner != null) {
+            return owner;
+        }
+
+        return readOwner(hybridPackages.get(name, length, hash), hybridReads);
+    }
+
+    /** Returns the owner that is read, of which there is at most one, or null. */
+    private static BaseModule readOwner(BaseModule[] owners, BitSet reads) {
+        if (owners != null) {
+            for (BaseModule owner : owners) {
+                if (reads.get(owner.ordinal())) {
+                    return owner;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /** Add the packages of the modules that are read, without iterating over the packages of other modules. */
+    private static void addReadOwners(Map<String, BaseModule> map, SharedPackageIndex index, BitSet reads) {
+        for (int ordinal = reads.nextSetBit(0); ordinal >= 0; ordinal = reads.nextSetBit(ordinal + 1)) {
+            BaseModule owner = index.module(ordinal);
+            index.packages(ordinal).forEach(packageName -> map.putIfAbsent(packageName, owner));
+        }
+    }
+
+    private static BitSet ordinals(Collection<? extends BaseModule> modules) {
+        var ordinals = new BitSet();
+        modules.forEach(module -> ordinals.set(module.ordinal()));
+        return ordinals;
+    }
+}
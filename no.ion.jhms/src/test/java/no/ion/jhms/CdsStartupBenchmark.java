@@ -0,0 +1,132 @@
+package no.ion.jhms;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures the wall time of launching a JHMS application with no.ion.jhms.Main, without and with a dynamic Class
+ * Data Sharing (CDS) archive of the classes of the application, including those defined by the hybrid module class
+ * loaders, as with javahms --cds-archive.
+ *
+ * <p>Must be run in the no.ion.jhms directory after {@code make}, which packages the JAR and builds the
+ * tests/multiversion scenario. Each case of experiments/app is a scenario with the root module {@code root} and the
+ * jar directories of the case as module path. A scenario without JARs, or that fails to launch with javahms, is
+ * reported as skipped with the reason.</p>
+ */
+public class CdsStartupBenchmark {
+    private static final Path JAR = Path.of("target/no.ion.jhms-3.1.jar");
+    private static final Path EXPERIMENTS_APP = Path.of("../experiments/app");
+    private static final int WARMUP_RUNS = 2;
+    private static final int RUNS = 10;
+
+    private static class Scenario {
+        private final String name;
+        private final List<Path> modulePath;
+        private final String module;
+
+        Scenario(String name, String module, List<Path> modulePath) {
+            this.name = name;
+            this.modulePath = modulePath;
+            this.module = module;
+        }
+    }
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        if (!Files.isRegularFile(JAR)) {
+            throw new IllegalStateException("Missing " + JAR + ": Run make first");
+        }
+
+        var scenarios = new ArrayList<Scenario>();
+        scenarios.add(new Scenario("tests/multiversion", "main",
+                                   Stream.of("tests/multiversion/m-1", "tests/multiversion/m-2",
+                                             "tests/multiversion/intermediate/target", "tests/multiversion/main/target")
+                                         .map(Path::of)
+                                         .collect(Collectors.toList())));
+        try (Stream<Path> cases = Files.list(EXPERIMENTS_APP)) {
+            for (Path caseDirectory : cases.filter(Files::isDirectory).sorted().collect(Collectors.toList())) {
+                try (Stream<Path> modules = Files.list(caseDirectory)) {
+                    List<Path> modulePath = modules.map(module -> module.resolve("jar"))
+                                                   .filter(Files::isDirectory)
+                                                   .sorted()
+                                                   .collect(Collectors.toList());
+                    scenarios.add(new Scenario("experiments/app/" + caseDirectory.getFileName(), "root", modulePath));
+                }
+            }
+        }
+
+        for (var scenario : scenarios) {
+            if (scenario.modulePath.isEmpty() || !scenario.modulePath.stream().allMatch(Files::isDirectory)) {
+                System.out.println(scenario.name + ": Skipped, no JARs");
+                continue;
+            }
+
+            String error = launch(scenario, List.of());
+            if (error != null) {
+                System.out.println(scenario.name + ": Skipped, fails with javahms: " + error);
+                continue;
+            }
+
+            Path archive = Files.createTempFile("jhms-", ".jsa");
+            try {
+                Files.delete(archive);
+                double without = meanMillis(scenario, List.of());
+                launchOrThrow(scenario, List.of("-XX:ArchiveClassesAtExit=" + archive));
+                double with = meanMillis(scenario, List.of("-XX:SharedArchiveFile=" + archive));
+                System.out.printf("%s: %.1f ms without archive, %.1f ms with archive (mean of %d launches)%n",
+                                  scenario.name, without, with, RUNS);
+            } finally {
+                Files.deleteIfExists(archive);
+            }
+        }
+    }
+
+    private static double meanMillis(Scenario scenario, List<String> javaOptions) throws IOException, InterruptedException {
+        for (int i = 0; i < WARMUP_RUNS; ++i) {
+            launchOrThrow(scenario, javaOptions);
+        }
+
+        long totalNanos = 0;
+        for (int i = 0; i < RUNS; ++i) {
+            long start = System.nanoTime();
+            launchOrThrow(scenario, javaOptions);
+            totalNanos += System.nanoTime() - start;
+        }
+        return totalNanos / 1e6 / RUNS;
+    }
+
+    private static void launchOrThrow(Scenario scenario, List<String> javaOptions) throws IOException, InterruptedException {
+        String error = launch(scenario, javaOptions);
+        if (error != null) {
+            throw new IllegalStateException(scenario.name + ": " + error);
+        }
+    }
+
+    /** Returns null on success, or the first line of the standard error of the failed launch. */
+    private static String launch(Scenario scenario, List<String> javaOptions) throws IOException, InterruptedException {
+        var command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(javaOptions);
+        command.add("-jar");
+        command.add(JAR.toString());
+        command.add("-p");
+        command.add(scenario.modulePath.stream().map(Path::toString).collect(Collectors.joining(":")));
+        command.add("-m");
+        command.add(scenario.module);
+
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        String stderr = new String(process.getErrorStream().readAllBytes(), StandardCharsets.UTF_8);
+        int exitCode = process.waitFor();
+        if (exitCode == 0) {
+            return null;
+        }
+        return stderr.lines().findFirst().orElse("exited with " + exitCode);
+    }
+}
@@ -0,0 +1,112 @@
+package no.ion.jhms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChecksumCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void hitAfterSave() throws IOException {
+        Path jarPath = Files.copy(Path.of("src/test/resources/required-3.1.jar"), temporaryFolder.getRoot().toPath().resolve("required-3.1.jar"));
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("cache/checksums");
+        byte[] sha256 = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+                          17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32 };
+
+        ChecksumCache cache = ChecksumCache.load(cacheFile);
+        assertArrayEquals(sha256, cache.sha256(jarPath, () -> sha256));
+        assertArrayEquals(sha256, cache.sha256(jarPath, ChecksumCacheTest::unexpectedMiss));
+        assertEquals(1, cache.counters().hits());
+        assertEquals(1, cache.counters().misses());
+        cache.save();
+
+        // Saved only once without new misses
+        Files.delete(cacheFile);
+        cache.save();
+        assertTrue(Files.notExists(cacheFile));
+        cache.sha256(Files.copy(jarPath, temporaryFolder.getRoot().toPath().resolve("copy.jar")), () -> sha256);
+        cache.save();
+
+        cache = ChecksumCache.load(cacheFile);
+        assertArrayEquals(sha256, cache.sha256(jarPath, ChecksumCacheTest::unexpectedMiss));
+        assertEquals(1, cache.counters().hits());
+        assertEquals(0, cache.counters().misses());
+
+        // A modified file is a miss
+        Files.setLastModifiedTime(jarPath, FileTime.from(Instant.now().plusSeconds(10)));
+        byte[] newSha256 = new byte[32];
+        assertArrayEquals(newSha256, cache.sha256(jarPath, () -> newSha256));
+        assertEquals(1, cache.counters().misses());
+    }
+
+    @Test
+    public void duplicateDiscovery() throws IOException {
+        Path first = temporaryFolder.newFolder("first").toPath();
+        Path second = temporaryFolder.newFolder("second").toPath();
+        Files.copy(Path.of("src/test/resources/required-3.1.jar"), first.resolve("required-3.1.jar"));
+        Files.copy(Path.of("src/test/resources/required-3.1.jar"), second.resolve("required-3.1.jar"));
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("checksums");
+
+        var params = new HybridModuleContainer.Params().checksumCache(cacheFile);
+        try (var observableHybridModules = new ObservableHybridModules(params)) {
+            observableHybridModules.discoverHybridModules(List.of(first, second));
+        }
+        assertTrue(Files.exists(cacheFile));
+
+        // Both JARs were digested, and are now in the cache.
+        ChecksumCache cache = ChecksumCache.load(cacheFile);
+        byte[] sha256 = cache.sha256(first.resolve("required-3.1.jar"), ChecksumCacheTest::unexpectedMiss);
+        assertArrayEquals(sha256, cache.sha256(second.resolve("required-3.1.jar"), ChecksumCacheTest::unexpectedMiss));
+        try (var jar = HybridModuleJar.open(first.resolve("required-3.1.jar"))) {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : sha256) {
+                hex.append(String.format("%02X", b));
+            }
+            assertEquals(jar.sha256String(), hex.toString());
+        }
+    }
+
+    @Test
+    public void invalidCacheFileIsEmpty() throws IOException {
+        Path cacheFile = temporaryFolder.newFile("checksums").toPath();
+        Files.writeString(cacheFile, "garbage");
+        ChecksumCache cache = ChecksumCache.load(cacheFile);
+        cache.sha256(Path.of("src/test/resources/required-3.1.jar"), () -> new byte[32]);
+        assertEquals(1, cache.counters().misses());
+    }
+
+    @Test
+    public void failureToSaveIsNotFatal() throws IOException {
+        Path cacheFile = temporaryFolder.newFile("not-a-directory").toPath().resolve("checksums");
+        Path first = temporaryFolder.newFolder("first").toPath();
+        Path second = temporaryFolder.newFolder("second").toPath();
+        Files.copy(Path.of("src/test/resources/required-3.1.jar"), first.resolve("required-3.1.jar"));
+        Files.copy(Path.of("src/test/resources/required-3.1.jar"), second.resolve("required-3.1.jar"));
+
+        var params = new HybridModuleContainer.Params().checksumCache(cacheFile);
+        try (var observableHybridModules = new ObservableHybridModules(params)) {
+            observableHybridModules.discoverHybridModules(List.of(first, second));
+        }
+        assertFalse(Files.exists(cacheFile));
+    }
+
+    private static byte[] unexpectedMiss() {
+        fail("Unexpected cache miss");
+        return null;
+    }
+}
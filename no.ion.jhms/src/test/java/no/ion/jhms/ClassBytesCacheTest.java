@@ -0,0 +1,157 @@
+package no.ion.jhms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ClassBytesCacheTest {
+    private static final String TWO_EXPORTED_PUBLIC = "no.ion.jhms.test.FindHybridModule.two.exported.TwoExportedPublic";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void hitAfterMiss() throws IOException {
+        Path jarPath = Path.of("src/test/resources/rich.descriptor-1.3.4.jar");
+        Path directory = temporaryFolder.getRoot().toPath().resolve("class-bytes");
+        HybridModuleJar jar = HybridModuleJar.open(jarPath);
+        MappedJarFile jarFile = MappedJarFile.open(jarPath).orElseThrow();
+
+        var cache = new ClassBytesCache(directory);
+        assertSameEntries(jarFile, cache.entries(jar, jarFile));
+        assertEquals(List.of(jar.sha256String() + ".image"), list(directory));
+        assertEquals(0, cache.counters().hits());
+        assertEquals(1, cache.counters().misses());
+
+        cache = new ClassBytesCache(directory);
+        JarEntries entries = cache.entries(jar, jarFile);
+        assertSameEntries(jarFile, entries);
+        assertTrue(entries.getEntry("rich/descriptor/Main.class").isDirect());
+        assertEquals(1, cache.counters().hits());
+        assertEquals(0, cache.counters().misses());
+
+        // An invalid cache file is rewritten.
+        Files.write(directory.resolve(jar.sha256String() + ".image"), new byte[] { 1, 2, 3 });
+        cache = new ClassBytesCache(directory);
+        assertSameEntries(jarFile, cache.entries(jar, jarFile));
+        assertEquals(1, cache.counters().misses());
+        assertSameEntries(jarFile, cache.entries(jar, jarFile));
+        assertEquals(1, cache.counters().hits());
+    }
+
+    @Test
+    public void cacheFileOfAnotherJarIsRewritten() throws IOException {
+        Path jarPath = Path.of("src/test/resources/rich.descriptor-1.3.4.jar");
+        Path otherJarPath = Path.of("src/test/resources/find.hybrid.module.one-1.2.3.jar");
+        Path directory = temporaryFolder.getRoot().toPath().resolve("class-bytes");
+        HybridModuleJar jar = HybridModuleJar.open(jarPath);
+        HybridModuleJar otherJar = HybridModuleJar.open(otherJarPath);
+        MappedJarFile jarFile = MappedJarFile.open(jarPath).orElseThrow();
+        MappedJarFile otherJarFile = MappedJarFile.open(otherJarPath).orElseThrow();
+
+        new ClassBytesCache(directory).entries(otherJar, otherJarFile);
+        Files.move(directory.resolve(otherJar.sha256String() + ".image"), directory.resolve(jar.sha256String() + ".image"));
+
+        var cache = new ClassBytesCache(directory);
+        assertSameEntries(jarFile, cache.entries(jar, jarFile));
+        assertEquals(0, cache.counters().hits());
+        assertEquals(1, cache.counters().misses());
+    }
+
+    @Test
+    public void failureToSaveIsNotFatal() throws IOException {
+        Path jarPath = Path.of("src/test/resources/rich.descriptor-1.3.4.jar");
+        Path directory = temporaryFolder.newFile("not-a-directory").toPath().resolve("class-bytes");
+        MappedJarFile jarFile = MappedJarFile.open(jarPath).orElseThrow();
+
+        var cache = new ClassBytesCache(directory);
+        assertSame(jarFile, cache.entries(HybridModuleJar.open(jarPath), jarFile));
+        assertEquals(1, cache.counters().misses());
+        assertFalse(Files.exists(directory));
+    }
+
+    @Test
+    public void uncompressedJarIsNotCached() throws IOException {
+        Path jarPath = storedCopy(new ModuleJarWriter("uncompressed", "1.0").exports("a").writeTo(temporaryFolder.getRoot().toPath()));
+        Path directory = temporaryFolder.getRoot().toPath().resolve("class-bytes");
+
+        MappedJarFile jarFile = MappedJarFile.open(jarPath).orElseThrow();
+        assertFalse(jarFile.hasDeflatedEntries());
+        assertSame(jarFile, new ClassBytesCache(directory).entries(HybridModuleJar.open(jarPath), jarFile));
+        assertTrue(Files.notExists(directory));
+    }
+
+    @Test
+    public void containerDefinesClassesFromCache() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("class-bytes");
+        var params = new HybridModuleContainer.Params()
+                .classBytesCache(directory)
+                .checksumCache(temporaryFolder.getRoot().toPath().resolve("checksums"));
+
+        for (int i = 0; i < 2; ++i) {
+            try (var container = new HybridModuleContainer(params)) {
+                container.discoverHybridModules("src/test/resources");
+                RootHybridModule root = container.resolve(new HybridModuleContainer.ResolveParams("find.hybrid.module.two"));
+                assertEquals(TWO_EXPORTED_PUBLIC, root.loadClass(TWO_EXPORTED_PUBLIC).getName());
+            }
+            assertEquals(1, list(directory).size());
+        }
+    }
+
+    /** Returns a copy of the JAR with all entries STORED. */
+    private Path storedCopy(Path jarPath) throws IOException {
+        MappedJarFile jarFile = MappedJarFile.open(jarPath).orElseThrow();
+        Path stored = temporaryFolder.getRoot().toPath().resolve("stored.jar");
+        try (var out = new ZipOutputStream(Files.newOutputStream(stored))) {
+            for (String name : jarFile.entryNames()) {
+                byte[] content = bytes(jarFile.getEntry(name));
+                var crc32 = new CRC32();
+                crc32.update(content);
+                var entry = new ZipEntry(name);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                entry.setCrc(crc32.getValue());
+                out.putNextEntry(entry);
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+        return stored;
+    }
+
+    private static void assertSameEntries(JarEntries expected, JarEntries actual) {
+        assertEquals(expected.entryNames(), actual.entryNames());
+        for (String name : expected.entryNames()) {
+            assertArrayEquals(name, bytes(expected.getEntry(name)), bytes(actual.getEntry(name)));
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static List<String> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString()).collect(Collectors.toList());
+        }
+    }
+}
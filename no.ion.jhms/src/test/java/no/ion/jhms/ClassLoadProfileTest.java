@@ -0,0 +1,92 @@
+package no.ion.jhms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClassLoadProfileTest {
+    private static final String TWO_EXPORTED_PUBLIC = "no.ion.jhms.test.FindHybridModule.two.exported.TwoExportedPublic";
+    private static final String TWO_INTERNAL_PUBLIC = "no.ion.jhms.test.FindHybridModule.TwoInternalPublic";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void recordAndReplay() throws Exception {
+        Path profile = temporaryFolder.getRoot().toPath().resolve("classes.profile");
+        var params = new HybridModuleContainer.ResolveParams("find.hybrid.module.two");
+
+        try (var container = new HybridModuleContainer(new HybridModuleContainer.Params().recordClassLoadProfile(profile))) {
+            container.discoverHybridModules("src/test/resources");
+            RootHybridModule root = container.resolve(params);
+            root.loadClass(TWO_EXPORTED_PUBLIC).getClassLoader().loadClass(TWO_INTERNAL_PUBLIC);
+        }
+
+        List<ClassLoadProfile.Entry> recorded = ClassLoadProfile.read(profile).orElseThrow().entries();
+        assertEquals(List.of("find.hybrid.module.two@1.2.3/" + TWO_EXPORTED_PUBLIC,
+                             "find.hybrid.module.two@1.2.3/" + TWO_INTERNAL_PUBLIC),
+                     recorded.stream().map(ClassLoadProfile.Entry::toString).collect(Collectors.toList()));
+
+        // Replaying defines the recorded classes, as seen by recording the replay.
+        Path replayProfile = temporaryFolder.getRoot().toPath().resolve("replay.profile");
+        try (var container = new HybridModuleContainer(new HybridModuleContainer.Params().recordClassLoadProfile(replayProfile))) {
+            container.discoverHybridModules("src/test/resources");
+            container.resolve(params);
+            assertEquals(2, (int) container.replayClassLoadProfile(profile, 4).get());
+        }
+
+        assertEquals(Set.copyOf(names(recorded)), Set.copyOf(names(ClassLoadProfile.read(replayProfile).orElseThrow().entries())));
+    }
+
+    @Test
+    public void unresolvedModulesAndMissingClassesAreSkipped() throws Exception {
+        Path profile = temporaryFolder.getRoot().toPath().resolve("classes.profile");
+        var recorded = new ClassLoadProfile();
+        recorded.record(HybridModuleId.fromId("find.hybrid.module.two@1.2.3"), TWO_INTERNAL_PUBLIC);
+        recorded.record(HybridModuleId.fromId("find.hybrid.module.two@1.2.3"), "no.ion.jhms.test.FindHybridModule.Missing");
+        recorded.record(HybridModuleId.fromId("rich.descriptor@1.3.4"), "rich.descriptor.Unresolved");
+        recorded.write(profile);
+
+        try (var container = new HybridModuleContainer()) {
+            container.discoverHybridModules("src/test/resources");
+            container.resolve(new HybridModuleContainer.ResolveParams("find.hybrid.module.two"));
+            assertEquals(1, (int) container.replayClassLoadProfile(profile, 2).get());
+
+            // A missing profile is empty.
+            Path missing = temporaryFolder.getRoot().toPath().resolve("missing.profile");
+            assertEquals(0, (int) container.replayClassLoadProfile(missing, 2).get());
+        }
+
+        assertTrue(ClassLoadProfile.read(temporaryFolder.getRoot().toPath().resolve("missing.profile")).isEmpty());
+    }
+
+    @Test
+    public void largeProfileIsReplayedInChunks() throws Exception {
+        Path profile = temporaryFolder.getRoot().toPath().resolve("classes.profile");
+        var recorded = new ClassLoadProfile();
+        var id = HybridModuleId.fromId("find.hybrid.module.two@1.2.3");
+        for (int i = 0; i < 3 * HybridModuleContainer.REPLAY_CHUNK_SIZE; ++i) {
+            recorded.record(id, "no.ion.jhms.test.FindHybridModule.Missing" + i);
+        }
+        recorded.record(id, TWO_INTERNAL_PUBLIC);
+        recorded.write(profile);
+
+        try (var container = new HybridModuleContainer()) {
+            container.discoverHybridModules("src/test/resources");
+            container.resolve(new HybridModuleContainer.ResolveParams("find.hybrid.module.two"));
+            assertEquals(1, (int) container.replayClassLoadProfile(profile, 2).get());
+        }
+    }
+
+    private static List<String> names(List<ClassLoadProfile.Entry> entries) {
+        return entries.stream().map(ClassLoadProfile.Entry::toString).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,80 @@
+package no.ion.jhms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link HybridModuleClassLoader#loadClass(String)} of classes that have already been loaded, both a
+ * class defined by the class loader itself and one defined by a required hybrid module, as seen by
+ * reflection and deserialization.
+ *
+ * <p>The {@link #main(String...)} method runs the benchmark with 1, 2, 4, ... threads up to the number of
+ * available processors, to show how the throughput scales.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassLoadingBenchmark {
+    private static final String OWN_CLASS = "no.ion.jhms.test.FindHybridModule.TwoInternalPublic";
+    private static final String REQUIRED_CLASS = "no.ion.jhms.test.FindHybridModule.one.exported.OneExported";
+
+    private HybridModuleContainer container;
+    private ClassLoader classLoader;
+
+    @Setup
+    public void setup() throws ClassNotFoundException {
+        container = new HybridModuleContainer();
+        container.discoverHybridModules("src/test/resources");
+        RootHybridModule root = container.resolve(new HybridModuleContainer.ResolveParams("find.hybrid.module.two"));
+        classLoader = root.getClassLoader();
+        classLoader.loadClass(OWN_CLASS);
+        classLoader.loadClass(REQUIRED_CLASS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        container.close();
+    }
+
+    @Benchmark
+    public Class<?> loadOwnClass() throws ClassNotFoundException {
+        return classLoader.loadClass(OWN_CLASS);
+    }
+
+    @Benchmark
+    public Class<?> loadRequiredClass() throws ClassNotFoundException {
+        return classLoader.loadClass(REQUIRED_CLASS);
+    }
+
+    public static void main(String... args) throws RunnerException {
+        for (int threads = 1; ; threads *= 2) {
+            threads = Math.min(threads, Runtime.getRuntime().availableProcessors());
+            new Runner(new OptionsBuilder()
+                    .include(ClassLoadingBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build())
+                    .run();
+
+            if (threads == Runtime.getRuntime().availableProcessors()) {
+                break;
+            }
+        }
+    }
+}
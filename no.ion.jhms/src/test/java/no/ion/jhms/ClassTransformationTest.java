@@ -0,0 +1,135 @@
+package no.ion.jhms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class ClassTransformationTest {
+    private static final String TWO_EXPORTED_PUBLIC = "no.ion.jhms.test.FindHybridModule.two.exported.TwoExportedPublic";
+    private static final String ONE_EXPORTED_PUBLIC = "no.ion.jhms.test.FindHybridModule.one.exported.OneExportedPublic";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static class RecordingTransformer implements ClassTransformer {
+        private final String version;
+        private final Function<byte[], byte[]> transformation;
+        private final List<String> transformed = new CopyOnWriteArrayList<>();
+
+        RecordingTransformer(String version, Function<byte[], byte[]> transformation) {
+            this.version = version;
+            this.transformation = transformation;
+        }
+
+        @Override
+        public String version() { return version; }
+
+        @Override
+        public byte[] transform(String hybridModuleId, String className, byte[] classBytes) {
+            transformed.add(hybridModuleId + "/" + className);
+            return transformation.apply(classBytes);
+        }
+    }
+
+    @Test
+    public void onlyTheClassesOfTargetedModulesAreTransformed() throws Exception {
+        var transformer = new RecordingTransformer("copy-1", byte[]::clone);
+        var params = new HybridModuleContainer.Params().addClassTransformer("find.hybrid.module.two", transformer);
+
+        try (var container = new HybridModuleContainer(params)) {
+            container.discoverHybridModules("src/test/resources");
+            RootHybridModule root = container.resolve(new HybridModuleContainer.ResolveParams("find.hybrid.module.two"));
+            root.loadClass(TWO_EXPORTED_PUBLIC);
+            root.getClassLoader().loadClass(ONE_EXPORTED_PUBLIC);
+        }
+
+        assertEquals(List.of("find.hybrid.module.two@1.2.3/" + TWO_EXPORTED_PUBLIC), transformer.transformed);
+    }
+
+    @Test
+    public void transformedBytesAreDefined() throws Exception {
+        var params = new HybridModuleContainer.Params()
+                .addClassTransformer("find.hybrid.module.two", new RecordingTransformer("unchanged-1", bytes -> null))
+                .addClassTransformer("find.hybrid.module.two", new RecordingTransformer("garbage-1", bytes -> new byte[] { 1, 2, 3 }));
+
+        try (var container = new HybridModuleContainer(params)) {
+            container.discoverHybridModules("src/test/resources");
+            RootHybridModule root = container.resolve(new HybridModuleContainer.ResolveParams("find.hybrid.module.two"));
+            root.loadClass(TWO_EXPORTED_PUBLIC);
+            fail();
+        } catch (ClassFormatError e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void transformedClassesAreCached() throws Exception {
+        Path cache = temporaryFolder.getRoot().toPath().resolve("transformed");
+        var transformer = new RecordingTransformer("copy-1", byte[]::clone);
+        load(transformer, cache);
+        assertEquals(1, transformer.transformed.size());
+
+        // The same version is read from the cache.
+        load(new RecordingTransformer("copy-1", bytes -> { throw new AssertionError("Not cached"); }), cache);
+
+        // Another version is transformed again.
+        var otherVersion = new RecordingTransformer("copy-2", bytes -> null);
+        load(otherVersion, cache);
+        assertEquals(1, otherVersion.transformed.size());
+        load(new RecordingTransformer("copy-2", bytes -> { throw new AssertionError("Not cached"); }), cache);
+
+        // A file per JAR and transformer versions.
+        try (Stream<Path> files = Files.list(cache)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    public void transformedClassesAreSavedWithoutClosingTheContainer() throws Exception {
+        Path cache = temporaryFolder.getRoot().toPath().resolve("transformed");
+        var params = new HybridModuleContainer.Params()
+                .addClassTransformer("find.hybrid.module.two", new RecordingTransformer("copy-1", byte[]::clone))
+                .transformedClassCache(cache);
+
+        var container = new HybridModuleContainer(params);
+        container.discoverHybridModules("src/test/resources");
+        container.resolve(new HybridModuleContainer.ResolveParams("find.hybrid.module.two")).loadClass(TWO_EXPORTED_PUBLIC);
+        assertFalse(Files.exists(cache));
+        container.saveOnExit();
+
+        load(new RecordingTransformer("copy-1", bytes -> { throw new AssertionError("Not cached"); }), cache);
+        container.close();
+    }
+
+    @Test
+    public void failureToSaveIsNotFatal() throws Exception {
+        Path cache = temporaryFolder.newFile("not-a-directory").toPath().resolve("transformed");
+        var transformer = new RecordingTransformer("copy-1", byte[]::clone);
+        load(transformer, cache);
+        assertEquals(1, transformer.transformed.size());
+        assertFalse(Files.exists(cache));
+    }
+
+    private static void load(ClassTransformer transformer, Path cache) throws ClassNotFoundException {
+        var params = new HybridModuleContainer.Params()
+                .addClassTransformer("find.hybrid.module.two", transformer)
+                .transformedClassCache(cache);
+
+        try (var container = new HybridModuleContainer(params)) {
+            container.discoverHybridModules("src/test/resources");
+            RootHybridModule root = container.resolve(new HybridModuleContainer.ResolveParams("find.hybrid.module.two"));
+            assertEquals(TWO_EXPORTED_PUBLIC, root.loadClass(TWO_EXPORTED_PUBLIC).getName());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package no.ion.jhms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.module.FindException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConcurrentResolutionTest {
+    private static final int THREADS = 16;
+    private static final int LAYERS = 5;
+    private static final int WIDTH = 8;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test(timeout = 60_000)
+    public void overlappingRootsAreResolvedOnce() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+        // Layer 0 is at the bottom: Module m.L.i requires m.(L-1).i and m.(L-1).(i+1).
+        for (int layer = 0; layer < LAYERS; ++layer) {
+            for (int i = 0; i < WIDTH; ++i) {
+                var writer = new ModuleJarWriter(name(layer, i), "1").exports(name(layer, i) + ".exported");
+                if (layer > 0) {
+                    writer.requires(name(layer - 1, i), true).requires(name(layer - 1, (i + 1) % WIDTH));
+                }
+                writer.writeTo(directory);
+            }
+        }
+
+        var roots = new ArrayList<String>();
+        for (int layer = 1; layer < LAYERS; ++layer) {
+            for (int i = 0; i < WIDTH; ++i) {
+                roots.add(name(layer, i));
+            }
+        }
+
+        for (int iteration = 0; iteration < 10; ++iteration) {
+            try (var container = new HybridModuleContainer()) {
+                container.discoverHybridModules(directory);
+
+                var random = new Random(iteration);
+                List<Map<String, HybridModule>> resolved = runConcurrently(threadIndex -> {
+                    var shuffledRoots = new ArrayList<>(roots);
+                    Collections.shuffle(shuffledRoots, random);
+                    var modules = new HashMap<String, HybridModule>();
+                    for (String root : shuffledRoots) {
+                        HybridModule hybridModule = container.resolve(new HybridModuleContainer.ResolveParams(root)).hybridModule();
+                        hybridModule.hybridReadClosure().forEach(module -> modules.put(module.id().name(), module));
+                    }
+                    return modules;
+                });
+
+                // Each hybrid module was resolved once: All threads see the same instances.
+                Map<String, HybridModule> expected = resolved.get(0);
+                assertEquals(LAYERS * WIDTH, expected.size());
+                for (var modules : resolved) {
+                    assertEquals(expected.keySet(), modules.keySet());
+                    expected.forEach((name, module) -> assertSame(module, modules.get(name)));
+                }
+
+                // The reads are those of sequential resolution.
+                try (var sequentialContainer = new HybridModuleContainer()) {
+                    sequentialContainer.discoverHybridModules(directory);
+                    for (String root : roots) {
+                        HybridModule hybridModule = sequentialContainer.resolve(new HybridModuleContainer.ResolveParams(root)).hybridModule();
+                        assertEquals(names(hybridModule.hybridReads()), names(expected.get(root).hybridReads()));
+                        assertEquals(names(hybridModule.hybridReadClosure()), names(expected.get(root).hybridReadClosure()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void cyclicDependencyAcrossThreads() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+        new ModuleJarWriter("cycle.a", "1").requires("cycle.b").writeTo(directory);
+        new ModuleJarWriter("cycle.b", "1").requires("cycle.c").writeTo(directory);
+        new ModuleJarWriter("cycle.c", "1").requires("cycle.a").writeTo(directory);
+
+        for (int iteration = 0; iteration < 10; ++iteration) {
+            try (var container = new HybridModuleContainer()) {
+                container.discoverHybridModules(directory);
+
+                List<String> messages = runConcurrently(threadIndex -> {
+                    String root = "cycle." + (char) ('a' + threadIndex % 3);
+                    try {
+                        container.resolve(new HybridModuleContainer.ResolveParams(root));
+                        fail();
+                        return null;
+                    } catch (FindException e) {
+                        return e.getMessage();
+                    }
+                });
+
+                for (String message : messages) {
+                    assertTrue(message, message.startsWith("Cyclic dependency on hybrid module cycle."));
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void failedResolutionIsReportedToAllThreads() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+        new ModuleJarWriter("failing.top", "1").requires("failing.middle").writeTo(directory);
+        new ModuleJarWriter("failing.other", "1").requires("failing.middle").writeTo(directory);
+        new ModuleJarWriter("failing.middle", "1").requires("failing.missing").writeTo(directory);
+
+        for (int iteration = 0; iteration < 10; ++iteration) {
+            try (var container = new HybridModuleContainer()) {
+                container.discoverHybridModules(directory);
+
+                List<FindException> exceptions = runConcurrently(threadIndex -> {
+                    String root = threadIndex % 2 == 0 ? "failing.top" : "failing.other";
+                    try {
+                        container.resolve(new HybridModuleContainer.ResolveParams(root));
+                        fail();
+                        return null;
+                    } catch (FindException e) {
+                        return e;
+                    }
+                });
+
+                // Each thread has its own exception, with the chain of its own root.
+                assertEquals(THREADS, exceptions.stream().distinct().count());
+                for (int threadIndex = 0; threadIndex < THREADS; ++threadIndex) {
+                    String root = threadIndex % 2 == 0 ? "failing.top" : "failing.other";
+                    assertEquals("Hybrid module failing.missing@1 not found: Required by failing.middle@1: Required by " + root + "@1",
+                                 exceptions.get(threadIndex).getMessage());
+                }
+            }
+        }
+    }
+
+    private static String name(int layer, int index) { return "m" + layer + ".i" + index; }
+
+    private static List<String> names(List<HybridModule> hybridModules) {
+        return hybridModules.stream().map(module -> module.id().toString()).collect(Collectors.toList());
+    }
+
+    private static <T> List<T> runConcurrently(Function<Integer, T> task) throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            var start = new CountDownLatch(1);
+            var tasks = new ArrayList<Callable<T>>();
+            for (int i = 0; i < THREADS; ++i) {
+                int threadIndex = i;
+                tasks.add(() -> {
+                    start.await();
+                    return task.apply(threadIndex);
+                });
+            }
+
+            List<Future<T>> futures = new ArrayList<>();
+            tasks.forEach(callable -> futures.add(executor.submit(callable)));
+            start.countDown();
+
+            var results = new ArrayList<T>();
+            for (var future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
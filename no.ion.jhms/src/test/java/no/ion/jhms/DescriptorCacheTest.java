@@ -0,0 +1,84 @@
+package no.ion.jhms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DescriptorCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void hitAfterSave() throws IOException, ClassNotFoundException {
+        Path modules = temporaryFolder.newFolder("modules").toPath();
+        for (String jar : new String[] { "rich.descriptor-1.3.4.jar", "required-3.1.jar" }) {
+            Files.copy(Path.of("src/test/resources", jar), modules.resolve(jar));
+        }
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("cache/descriptor.cache");
+
+        DescriptorCache cache = DescriptorCache.load(cacheFile);
+        HybridModuleJar jar = cache.open(modules.resolve("rich.descriptor-1.3.4.jar"));
+        cache.open(modules.resolve("required-3.1.jar"));
+        assertEquals(0, cache.counters().hits());
+        assertEquals(2, cache.counters().misses());
+        assertFalse(Files.exists(cacheFile));
+        cache.save();
+        assertTrue(Files.exists(cacheFile));
+
+        cache = DescriptorCache.load(cacheFile);
+        HybridModuleJar cachedJar = cache.open(modules.resolve("rich.descriptor-1.3.4.jar"));
+        assertEquals(1, cache.counters().hits());
+        assertEquals(0, cache.counters().misses());
+        assertEquals(jar.descriptor(), cachedJar.descriptor());
+        assertEquals(jar.hybridModuleId(), cachedJar.hybridModuleId());
+        assertEquals(jar.descriptor().packages(), cachedJar.descriptor().packages());
+        assertEquals(jar.descriptor().mainClass(), cachedJar.descriptor().mainClass());
+        assertNotNull(cachedJar.getClassBytes("rich.descriptor.Main"));
+
+        // A modified JAR is a miss
+        Files.setLastModifiedTime(modules.resolve("required-3.1.jar"), FileTime.from(Instant.now().plusSeconds(10)));
+        cache.open(modules.resolve("required-3.1.jar"));
+        assertEquals(1, cache.counters().misses());
+
+        // Resolving with the cache
+        var params = new HybridModuleContainer.Params().descriptorCache(cacheFile);
+        try (var container = new HybridModuleContainer(params)) {
+            container.discoverHybridModules(modules);
+            RootHybridModule root = container.resolve(new HybridModuleContainer.ResolveParams("rich.descriptor"));
+            Class<?> aClass = root.loadClass("rich.descriptor.exported.E");
+            aClass.getClassLoader().loadClass("required.exported.RequiredExported");
+        }
+    }
+
+    @Test
+    public void failureToSaveIsNotFatal() throws IOException, ClassNotFoundException {
+        Path cacheFile = temporaryFolder.newFile("not-a-directory").toPath().resolve("descriptor.cache");
+        var params = new HybridModuleContainer.Params().descriptorCache(cacheFile);
+        try (var container = new HybridModuleContainer(params)) {
+            container.discoverHybridModules("src/test/resources");
+            RootHybridModule root = container.resolve(new HybridModuleContainer.ResolveParams("rich.descriptor"));
+            assertNotNull(root.loadClass("rich.descriptor.exported.E"));
+        }
+        assertFalse(Files.exists(cacheFile));
+    }
+
+    @Test
+    public void invalidCacheFileIsEmpty() throws IOException {
+        Path cacheFile = temporaryFolder.newFile("descriptor.cache").toPath();
+        Files.writeString(cacheFile, "garbage");
+        DescriptorCache cache = DescriptorCache.load(cacheFile);
+        cache.open(Path.of("src/test/resources/required-3.1.jar"));
+        assertEquals(1, cache.counters().misses());
+    }
+}
@@ -0,0 +1,132 @@
+package no.ion.jhms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compares two large JARs claiming the same hybrid module ID with {@link HybridModuleJar#checksumEqual(HybridModuleJar)},
+ * versus the former SHA-256 of {@link Files#readAllBytes(Path) all bytes} of both files.
+ *
+ * <p>An identical copy must be digested in full, but without reading the files into the heap, while a JAR rebuilt
+ * with other timestamps differs in the central directory and is rejected without digesting.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DuplicateJarBenchmark {
+    /** The size of the JARs, in MB. */
+    @Param({"64"})
+    public int megabytes;
+
+    private Path directory;
+    private Path jarPath;
+    private Path copyPath;
+    private Path rebuiltPath;
+
+    private HybridModuleJar jar;
+    private HybridModuleJar copy;
+    private HybridModuleJar rebuilt;
+
+    @Setup(Level.Trial)
+    public void writeJars() throws IOException {
+        directory = Files.createTempDirectory("DuplicateJarBenchmark");
+        jarPath = writeJar(directory.resolve("a.jar"), 0);
+        copyPath = Files.copy(jarPath, directory.resolve("copy.jar"));
+        rebuiltPath = writeJar(directory.resolve("rebuilt.jar"), 1_000_000_000L);
+        if (Files.size(jarPath) != Files.size(rebuiltPath)) {
+            throw new IllegalStateException("The rebuilt JAR must be of the same size");
+        }
+    }
+
+    /** The checksums are cached by the HybridModuleJar, so open new ones per invocation. */
+    @Setup(Level.Invocation)
+    public void openJars() {
+        jar = HybridModuleJar.open(jarPath);
+        copy = HybridModuleJar.open(copyPath);
+        rebuilt = HybridModuleJar.open(rebuiltPath);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeJars() {
+        jar.close();
+        copy.close();
+        rebuilt.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void removeJars() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean readAllBytesCopy() throws IOException, NoSuchAlgorithmException {
+        return Arrays.equals(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(jarPath)),
+                             MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(copyPath)));
+    }
+
+    @Benchmark
+    public boolean checksumEqualCopy() { return jar.checksumEqual(copy); }
+
+    @Benchmark
+    public boolean readAllBytesRebuilt() throws IOException, NoSuchAlgorithmException {
+        return Arrays.equals(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(jarPath)),
+                             MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(rebuiltPath)));
+    }
+
+    @Benchmark
+    public boolean checksumEqualRebuilt() { return jar.checksumEqual(rebuilt); }
+
+    /** Writes a hybrid modular JAR with incompressible 64 kB entries, with the given time on all entries. */
+    private Path writeJar(Path path, long time) throws IOException {
+        var random = new Random(17);
+        try (var requiredJar = new ZipFile("src/test/resources/required-3.1.jar");
+             var out = new ZipOutputStream(Files.newOutputStream(path))) {
+            var moduleInfo = new ZipEntry("module-info.class");
+            moduleInfo.setTime(time);
+            out.putNextEntry(moduleInfo);
+            requiredJar.getInputStream(requiredJar.getEntry("module-info.class")).transferTo(out);
+            out.closeEntry();
+
+            byte[] content = new byte[64 * 1024];
+            for (int i = 0; i < megabytes * 16; ++i) {
+                random.nextBytes(content);
+                var entry = new ZipEntry("required/Resource" + i + ".bin");
+                entry.setTime(time);
+                out.putNextEntry(entry);
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+        return path;
+    }
+}
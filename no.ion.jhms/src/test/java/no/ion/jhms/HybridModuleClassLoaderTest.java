@@ -0,0 +1,121 @@
+package no.ion.jhms;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HybridModuleClassLoaderTest {
+    private static final int ROUNDS = 10;
+    private static final int THREADS = 2000;
+    private static final List<String> CLASSES = List.of(
+            "rich.descriptor.Main",
+            "rich.descriptor.exported.E",
+            "rich.descriptor.qualified.Q",
+            "required.exported.RequiredExported",
+            "java.lang.String");
+    private static final String MISSING_CLASS = "required.exported.Missing";
+
+    @Test
+    public void stressWithMonitor() throws Exception {
+        stress(HybridModuleContainer.Params.ClassLoadingLock.MONITOR);
+    }
+
+    @Test
+    public void stressWithReentrantLock() throws Exception {
+        stress(HybridModuleContainer.Params.ClassLoadingLock.REENTRANT_LOCK);
+    }
+
+    /** Loads classes from a fresh container from thousands of (virtual, if supported) threads at once. */
+    private static void stress(HybridModuleContainer.Params.ClassLoadingLock classLoadingLock) throws Exception {
+        ExecutorService executor = newThreadPerTaskExecutor();
+        try {
+            for (int round = 0; round < ROUNDS; ++round) {
+                var params = new HybridModuleContainer.Params().classLoadingLock(classLoadingLock);
+                try (var container = new HybridModuleContainer(params)) {
+                    container.discoverHybridModules("src/test/resources");
+                    ClassLoader classLoader = container.resolve(new HybridModuleContainer.ResolveParams("rich.descriptor")).getClassLoader();
+
+                    var start = new CountDownLatch(1);
+                    var futures = new ArrayList<Future<List<Class<?>>>>();
+                    for (int thread = 0; thread < THREADS; ++thread) {
+                        int offset = thread;
+                        futures.add(executor.submit(() -> {
+                            start.await();
+                            var classes = new ArrayList<Class<?>>();
+                            for (int i = 0; i < CLASSES.size(); ++i) {
+                                classes.add(classLoader.loadClass(CLASSES.get((offset + i) % CLASSES.size())));
+                            }
+
+                            try {
+                                classLoader.loadClass(MISSING_CLASS);
+                                fail();
+                            } catch (ClassNotFoundException e) {
+                                // expected
+                            }
+
+                            return classes;
+                        }));
+                    }
+                    start.countDown();
+
+                    List<Class<?>> expected = null;
+                    for (int thread = 0; thread < THREADS; ++thread) {
+                        List<Class<?>> classes = rotate(futures.get(thread).get(), thread);
+                        if (expected == null) {
+                            expected = classes;
+                        } else {
+                            for (int i = 0; i < CLASSES.size(); ++i) {
+                                assertSame(expected.get(i), classes.get(i));
+                            }
+                        }
+                    }
+
+                    assertEquals(CLASSES.get(1), expected.get(1).getName());
+                    assertSame(String.class, expected.get(4));
+                    assertEquals(0, ((HybridModuleClassLoader) classLoader).reentrantLockCount());
+                }
+            }
+        } catch (ExecutionException e) {
+            // E.g. an AssertionError in a task
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (Exception) e.getCause();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+
+    /** Undo the rotation of the class names by the thread at offset. */
+    private static List<Class<?>> rotate(List<Class<?>> classes, int offset) {
+        var rotated = new ArrayList<Class<?>>(classes);
+        for (int i = 0; i < classes.size(); ++i) {
+            rotated.set((offset + i) % classes.size(), classes.get(i));
+        }
+        return rotated;
+    }
+
+    /** Virtual threads are available with JDK 21, otherwise fall back to a platform thread per task. */
+    private static ExecutorService newThreadPerTaskExecutor() throws ReflectiveOperationException {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
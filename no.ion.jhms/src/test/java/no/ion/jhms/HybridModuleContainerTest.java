@@ -1,27 +1,39 @@
 package no.ion.jhms;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class HybridModuleContainerTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
     public static final List<String> JAVA_BASE_EXPORTS = List.of(
             "java.io",
@@ -98,6 +110,87 @@ public class HybridModuleContainerTest {
         }
     }
 
+    @Test
+    public void embeddedHybridModulesInFatJar() throws Exception {
+        // find.hybrid.module.one is STORED and mapped in place, and find.hybrid.module.two is DEFLATED and inflated.
+        Path fatJar = temporaryFolder.getRoot().toPath().resolve("fat.jar");
+        try (var out = new ZipOutputStream(Files.newOutputStream(fatJar))) {
+            out.putNextEntry(new ZipEntry("META-INF/mod/"));
+            out.closeEntry();
+            putEntry(out, "META-INF/mod/find.hybrid.module.one-1.2.3.jar", ZipEntry.STORED,
+                     Files.readAllBytes(Path.of("src/test/resources/find.hybrid.module.one-1.2.3.jar")));
+            putEntry(out, "META-INF/mod/find.hybrid.module.two-1.2.3.jar", ZipEntry.DEFLATED,
+                     Files.readAllBytes(Path.of("src/test/resources/find.hybrid.module.two-1.2.3.jar")));
+        }
+
+        try (var classLoader = new URLClassLoader(new URL[] { fatJar.toUri().toURL() }, null);
+             var container = new HybridModuleContainer()) {
+            container.discoverEmbeddedHybridModules(classLoader);
+            RootHybridModule root = container.resolve(new HybridModuleContainer.ResolveParams("find.hybrid.module.two"));
+            Class<?> twoExportedPublic = root.loadClass("no.ion.jhms.test.FindHybridModule.two.exported.TwoExportedPublic");
+            Class<?> oneExportedPublic = twoExportedPublic.getClassLoader().loadClass("no.ion.jhms.test.FindHybridModule.one.exported.OneExportedPublic");
+
+            assertEquals("jar:" + fatJar.toUri().toURL() + "!/META-INF/mod/find.hybrid.module.two-1.2.3.jar",
+                         jarOf(twoExportedPublic).uri().toString());
+            assertEquals("jar:" + fatJar.toUri().toURL() + "!/META-INF/mod/find.hybrid.module.one-1.2.3.jar",
+                         jarOf(oneExportedPublic).uri().toString());
+        }
+    }
+
+    static HybridModuleJar jarOf(Class<?> klass) {
+        return ((HybridModuleClassLoader) klass.getClassLoader()).jar();
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, int method, byte[] content) throws IOException {
+        var zipEntry = new ZipEntry(name);
+        zipEntry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            zipEntry.setSize(content.length);
+            var crc32 = new CRC32();
+            crc32.update(content);
+            zipEntry.setCrc(crc32.getValue());
+        }
+        out.putNextEntry(zipEntry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    @Test
+    public void negativeClassCache() throws ClassNotFoundException {
+        var containerParams = new HybridModuleContainer.Params().stacklessClassNotFoundExceptions(true);
+        try (var container = new HybridModuleContainer(containerParams)) {
+            container.discoverHybridModules("src/test/resources");
+            HybridModuleContainer.ResolveParams params = new HybridModuleContainer.ResolveParams("find.hybrid.module.two");
+            RootHybridModule root = container.resolve(params);
+            ClassLoader classLoader = root.loadClass("no.ion.jhms.test.FindHybridModule.two.exported.TwoExportedPublic").getClassLoader();
+            String missingClass = "no.ion.jhms.test.FindHybridModule.one.exported.Missing";
+
+            CacheCounters counters = root.getClassLoader().negativeClassCacheCounters();
+            assertEquals(0, counters.hits());
+            assertEquals(0, counters.size());
+
+            String message = null;
+            for (int i = 0; i < 3; ++i) {
+                try {
+                    classLoader.loadClass(missingClass);
+                    fail();
+                } catch (ClassNotFoundException e) {
+                    if (message == null) {
+                        message = e.getMessage();
+                    } else {
+                        assertEquals(message, e.getMessage());
+                        assertEquals(0, e.getStackTrace().length);
+                    }
+                }
+            }
+
+            counters = root.getClassLoader().negativeClassCacheCounters();
+            assertEquals(2, counters.hits());
+            assertEquals(1, counters.size());
+            assertEquals(0, counters.evictions());
+        }
+    }
+
     @Test
     public void test_callIn() {
         try (var container = new HybridModuleContainer()) {
@@ -248,6 +341,76 @@ public class HybridModuleContainerTest {
         }
     }
 
+    @Test
+    public void lazyClassLoaders() throws ClassNotFoundException, IOException {
+        var containerParams = new HybridModuleContainer.Params().lazyClassLoaders(true);
+        try (var container = new HybridModuleContainer(containerParams)) {
+            container.discoverHybridModules(Paths.get("src/test/resources"));
+            RootHybridModule root = container.resolve(new HybridModuleContainer.ResolveParams("rich.descriptor"));
+            assertTrue(root.hybridModule().hasClassLoader());
+
+            HybridModule required = root.hybridModule().hybridReads().stream()
+                    .filter(hybridModule -> hybridModule.id().name().equals("required"))
+                    .findFirst()
+                    .orElseThrow();
+            assertFalse(required.hasClassLoader());
+
+            // Resources are read from the JAR of the required hybrid module, without creating its class loader.
+            Class<?> aClass = root.loadClass("rich.descriptor.exported.E");
+            assertResource("Exported file.\n", aClass.getResourceAsStream("/required/exported/exported.txt"));
+            assertFalse(required.hasClassLoader());
+
+            // The module graph is made without class loaders.
+            container.moduleGraph2(new HybridModuleContainer.GraphParams());
+            assertFalse(required.hasClassLoader());
+
+            Class<?> requiredClass = aClass.getClassLoader().loadClass("required.exported.RequiredExported");
+            assertTrue(required.hasClassLoader());
+            assertEquals(required.getClassLoader(), requiredClass.getClassLoader());
+            assertResource("Unexported resource file.\n", requiredClass.getResourceAsStream("/required/unexported.txt"));
+        }
+    }
+
+    @Test
+    public void lazyClassLoadersFailOnSplitPackages() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        new ModuleJarWriter("split.top", "1").requires("split.middle").writeTo(directory);
+        new ModuleJarWriter("split.middle", "1").requires("split.a").requires("split.b").exports("split.middle").writeTo(directory);
+        new ModuleJarWriter("split.a", "1").exports("split.common").writeTo(directory);
+        new ModuleJarWriter("split.b", "1").exports("split.common").writeTo(directory);
+
+        try (var container = new HybridModuleContainer(new HybridModuleContainer.Params().lazyClassLoaders(true))) {
+            container.discoverHybridModules(directory);
+            container.resolve(new HybridModuleContainer.ResolveParams("split.top"));
+            fail();
+        } catch (InvalidHybridModuleException e) {
+            assertEquals("Package split.common visible to hybrid module split.middle@1 is exported from two different " +
+                         "readable modules (split.b@1 and split.a@1)", e.getMessage());
+        }
+    }
+
+    @Test
+    public void platformModulesAreSharedByContainers() {
+        try (var container1 = new HybridModuleContainer();
+             var container2 = new HybridModuleContainer()) {
+            container1.discoverHybridModules(Paths.get("src/test/resources"));
+            container2.discoverHybridModules(Paths.get("src/test/resources"));
+            var params = new HybridModuleContainer.ResolveParams("rich.descriptor");
+            List<PlatformModule> platformReads1 = container1.resolve(params).hybridModule().platformReads();
+            List<PlatformModule> platformReads2 = container2.resolve(params).hybridModule().platformReads();
+
+            assertEquals(platformReads1.size(), platformReads2.size());
+            assertTrue(platformReads1.stream().anyMatch(platformModule -> platformModule.name().equals("java.base")));
+            for (int i = 0; i < platformReads1.size(); ++i) {
+                assertSame(platformReads1.get(i), platformReads2.get(i));
+            }
+
+            // A platform module is observable even if no hybrid module requires it.
+            assertTrue(container1.isObservable("java.sql"));
+            assertFalse(container1.isObservable("rich.descriptor"));
+        }
+    }
+
     @Test
     public void getResourceAsStreamFromPlatformModule() throws ClassNotFoundException, IOException {
         try (var container = new HybridModuleContainer()) {
@@ -286,6 +449,27 @@ public class HybridModuleContainerTest {
         }
     }
 
+    @Test
+    public void missingResource() throws ClassNotFoundException, IOException {
+        try (var container = new HybridModuleContainer()) {
+            container.discoverHybridModules(Paths.get("src/test/resources"));
+            HybridModuleContainer.ResolveParams params = new HybridModuleContainer.ResolveParams("rich.descriptor");
+            RootHybridModule root = container.resolve(params);
+            Class<?> aClass = root.loadClass("rich.descriptor.exported.E");
+            ClassLoader classLoader = aClass.getClassLoader();
+
+            // A missing resource in this hybrid module, in a required hybrid module, and in a package not visible.
+            for (String name : List.of("rich/descriptor/exported/missing.txt", "required/exported/missing.txt", "missing/missing.txt")) {
+                assertNull(classLoader.getResource(name));
+                assertNull(classLoader.getResourceAsStream(name));
+                assertFalse(classLoader.getResources(name).hasMoreElements());
+            }
+
+            assertNotNull(classLoader.getResource("required/exported/exported.txt"));
+            assertTrue(classLoader.getResources("rich/descriptor/exported/exported.txt").hasMoreElements());
+        }
+    }
+
     private static void assertResourceIsNull(boolean expectNull, InputStream actualInputStream)
             throws IOException {
         if (expectNull) {
@@ -1,22 +1,37 @@
 package no.ion.jhms;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
+import java.lang.module.FindException;
 import java.lang.module.ModuleDescriptor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import static java.lang.module.ModuleDescriptor.Requires;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class HybridModuleJarTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void richDescriptor() {
         Path path = Path.of("src/test/resources/rich.descriptor-1.3.4.jar");
@@ -49,6 +64,12 @@ public class HybridModuleJarTest {
             // Gotten from sha256sum(1). Recreating the JAR file will change the checksum.
             assertEquals("ec7dcd6565a85b2d5e826ed5a4643191559dd3fbeeb51b0cfdd15712d69ea790", jar.sha256String().toLowerCase());
 
+            assertTrue(jar.hasEntry("rich/descriptor/exported/exported.txt"));
+            assertTrue(jar.hasEntry("rich/descriptor/exported/"));
+            assertTrue(jar.hasEntry("rich/descriptor/exported"));
+            assertFalse(jar.hasEntry("rich/descriptor/exported/missing.txt"));
+            assertFalse(jar.getResourceAsStream("rich/descriptor/exported/missing.txt").isPresent());
+
             String uri = jar.uri().toString();
             assertTrue(uri.endsWith("src/test/resources/rich.descriptor-1.3.4.jar"));
 
@@ -61,4 +82,95 @@ public class HybridModuleJarTest {
             }
         }
     }
+
+    @Test
+    public void contentIsOpenedOnDemand() {
+        Path path = Path.of("src/test/resources/required-3.1.jar");
+        try (HybridModuleJar jar = HybridModuleJar.open(path)) {
+            assertFalse(jar.isContentOpen());
+            assertEquals(Set.of("required", "required.exported"), jar.descriptor().packages());
+
+            assertNotNull(jar.getClassBytes("required.Required"));
+            assertTrue(jar.isContentOpen());
+
+            jar.close();
+            assertFalse(jar.isContentOpen());
+            assertNotNull(jar.getClassBytes("required.exported.RequiredExported"));
+        }
+    }
+
+    @Test
+    public void packagesOfEntries() {
+        Path path = Path.of("foo.jar");
+        assertEquals(Set.of("a", "a.b"), HybridModuleJar.packagesOf(path, Set.of(
+                "META-INF/", "META-INF/MANIFEST.MF", "module-info.class", "a/", "a/x.txt", "a/b/", "a/b/C.class",
+                "a-b/y.txt", "z.txt")));
+
+        try {
+            HybridModuleJar.packagesOf(path, Set.of("module-info.class", "C.class"));
+            fail();
+        } catch (FindException e) {
+            assertEquals("Error reading module: foo.jar", e.getMessage());
+            assertEquals("C.class found in top-level directory (unnamed package not allowed in module)", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void checksumEqualStages() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        Path jarPath = writeJar(directory.resolve("a.jar"), "required/a.txt", "hello");
+        Path copyPath = Files.copy(jarPath, directory.resolve("copy.jar"));
+        Path otherNamePath = writeJar(directory.resolve("b.jar"), "required/b.txt", "hello");
+        Path largerPath = writeJar(directory.resolve("c.jar"), "required/a.txt", "hello!");
+
+        // Only the content of required/a.txt differs, not the CRC-32: The central directories are equal.
+        Path corruptPath = directory.resolve("corrupt.jar");
+        byte[] bytes = Files.readAllBytes(jarPath);
+        String content = new String(bytes, StandardCharsets.ISO_8859_1);
+        int index = content.indexOf("hello");
+        assertEquals(-1, content.indexOf("hello", index + 1));
+        bytes[index] = 'j';
+        Files.write(corruptPath, bytes);
+
+        try (var jar = HybridModuleJar.open(jarPath);
+             var copy = HybridModuleJar.open(copyPath);
+             var otherName = HybridModuleJar.open(otherNamePath);
+             var larger = HybridModuleJar.open(largerPath);
+             var corrupt = HybridModuleJar.open(corruptPath)) {
+            assertEquals(Files.size(jarPath), Files.size(otherNamePath));
+            assertEquals(Files.size(jarPath), Files.size(corruptPath));
+
+            assertTrue(jar.checksumEqual(jar));
+            assertFalse(jar.checksumEqual(larger));
+            assertFalse(jar.checksumEqual(otherName));
+            assertFalse(jar.checksumEqual(corrupt));
+            assertTrue(jar.checksumEqual(copy));
+            assertTrue(copy.checksumEqual(jar));
+        }
+    }
+
+    /** Writes a JAR with the module-info.class of required-3.1.jar, and one STORED entry. */
+    private static Path writeJar(Path path, String name, String content) throws IOException {
+        var entries = new LinkedHashMap<String, byte[]>();
+        try (var requiredJar = new ZipFile("src/test/resources/required-3.1.jar")) {
+            entries.put("module-info.class", requiredJar.getInputStream(requiredJar.getEntry("module-info.class")).readAllBytes());
+        }
+        entries.put(name, content.getBytes(StandardCharsets.UTF_8));
+
+        try (var out = new ZipOutputStream(Files.newOutputStream(path))) {
+            for (var entry : entries.entrySet()) {
+                var zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipEntry.setTime(0);
+                zipEntry.setSize(entry.getValue().length);
+                var crc32 = new CRC32();
+                crc32.update(entry.getValue());
+                zipEntry.setCrc(crc32.getValue());
+                out.putNextEntry(zipEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return path;
+    }
 }
@@ -0,0 +1,130 @@
+package no.ion.jhms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedJarFileTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readsSameContentAsZipFile() throws IOException {
+        Path path = Path.of("src/test/resources/rich.descriptor-1.3.4.jar");
+        MappedJarFile jar = MappedJarFile.open(path).orElseThrow();
+
+        try (var zipFile = new ZipFile(path.toFile())) {
+            zipFile.stream().forEach(entry -> {
+                byte[] expected = ExceptionUtil.uncheck(() -> zipFile.getInputStream(entry).readAllBytes());
+                assertArrayEquals(entry.getName(), expected, bytes(jar.getEntry(entry.getName())));
+            });
+        }
+
+        assertNull(jar.getEntry("rich/descriptor/Missing.class"));
+    }
+
+    @Test
+    public void storedAndDeflatedEntries() throws IOException {
+        byte[] large = "0123456789abcdef".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+        Path path = temporaryFolder.getRoot().toPath().resolve("entries.jar");
+        try (var out = new ZipOutputStream(Files.newOutputStream(path))) {
+            putEntry(out, "a/Stored.class", ZipEntry.STORED, large);
+            putEntry(out, "a/Deflated.class", ZipEntry.DEFLATED, large);
+            putEntry(out, "a/Small.class", ZipEntry.DEFLATED, "small".getBytes(StandardCharsets.UTF_8));
+            putEntry(out, "a/Empty.class", ZipEntry.DEFLATED, new byte[0]);
+        }
+
+        MappedJarFile jar = MappedJarFile.open(path).orElseThrow();
+        ByteBuffer stored = jar.getEntry("a/Stored.class");
+        assertTrue(stored.isDirect());
+        assertArrayEquals(large, bytes(stored));
+        assertArrayEquals(large, bytes(jar.getEntry("a/Deflated.class")));
+        assertEquals("small", new String(bytes(jar.getEntry("a/Small.class")), StandardCharsets.UTF_8));
+        assertEquals(0, jar.getEntry("a/Empty.class").remaining());
+    }
+
+    @Test
+    public void nestedJars() throws IOException {
+        Path innerPath = Path.of("src/test/resources/rich.descriptor-1.3.4.jar");
+        byte[] inner = Files.readAllBytes(innerPath);
+        Path path = temporaryFolder.getRoot().toPath().resolve("fat.jar");
+        try (var out = new ZipOutputStream(Files.newOutputStream(path))) {
+            putEntry(out, "META-INF/mod/stored.jar", ZipEntry.STORED, inner);
+            putEntry(out, "META-INF/mod/deflated.jar", ZipEntry.DEFLATED, inner);
+        }
+
+        MappedJarFile fatJar = MappedJarFile.open(path).orElseThrow();
+        ByteBuffer stored = fatJar.getEntryRetained("META-INF/mod/stored.jar");
+        ByteBuffer deflated = fatJar.getEntryRetained("META-INF/mod/deflated.jar");
+        assertTrue(stored.isDirect());
+        // Not the buffer reused by the thread
+        assertFalse(deflated == fatJar.getEntry("META-INF/mod/deflated.jar"));
+
+        HybridModuleJar expected = HybridModuleJar.open(innerPath);
+        for (ByteBuffer content : new ByteBuffer[] { stored, deflated }) {
+            MappedJarFile nested = MappedJarFile.of(content, Path.of(path + "!/nested.jar")).orElseThrow();
+            assertEquals(expected.entryNames(), nested.entryNames());
+
+            HybridModuleJar jar = HybridModuleJar.openNested(nested, URI.create("jar:" + path.toUri() + "!/nested.jar"));
+            assertEquals(expected.descriptor(), jar.descriptor());
+            assertTrue(jar.checksumEqual(expected));
+            assertArrayEquals(bytes(expected.getClassBytes("rich.descriptor.Main")), bytes(jar.getClassBytes("rich.descriptor.Main")));
+        }
+    }
+
+    @Test
+    public void multiReleaseJarIsNotMapped() throws IOException {
+        Path path = temporaryFolder.getRoot().toPath().resolve("multi-release.jar");
+        try (var out = new ZipOutputStream(Files.newOutputStream(path))) {
+            putEntry(out, "a/A.class", ZipEntry.DEFLATED, new byte[] { 1 });
+            putEntry(out, "META-INF/versions/11/a/A.class", ZipEntry.DEFLATED, new byte[] { 2 });
+        }
+
+        assertEquals(Optional.empty(), MappedJarFile.open(path).map(MappedJarFile::path));
+    }
+
+    @Test
+    public void notAZipFile() throws IOException {
+        Path path = temporaryFolder.newFile("garbage.jar").toPath();
+        Files.writeString(path, "not a zip file");
+        assertFalse(MappedJarFile.open(path).isPresent());
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, int method, byte[] content) throws IOException {
+        var entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            var crc32 = new CRC32();
+            crc32.update(content);
+            entry.setSize(content.length);
+            entry.setCrc(crc32.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,121 @@
+package no.ion.jhms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModuleImageTest {
+    private static final String TWO_EXPORTED_PUBLIC = "no.ion.jhms.test.FindHybridModule.two.exported.TwoExportedPublic";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void imageHasTheHybridModulesOfTheJars() {
+        Path image = writeImage(Path.of("src/test/resources"));
+
+        try (var jars = new ObservableHybridModules()) {
+            jars.discoverHybridModules(Path.of("src/test/resources"));
+            List<HybridModuleJar> imageJars = ModuleImage.open(image).jars();
+            assertEquals(jars.getHybridModuleIds(),
+                         imageJars.stream().map(HybridModuleJar::hybridModuleId).collect(Collectors.toList()));
+
+            for (var imageJar : imageJars) {
+                HybridModuleJar jar = jars.getJar(imageJar.hybridModuleId());
+                assertEquals(jar.descriptor(), imageJar.descriptor());
+                assertEquals(jar.entryNames(), imageJar.entryNames());
+                assertEquals(jar.sha256String(), imageJar.sha256String());
+                assertTrue(imageJar.checksumEqual(jar));
+                assertEquals(image + "!/" + jar.path().getFileName(), imageJar.path().toString());
+            }
+        }
+    }
+
+    @Test
+    public void loadClassFromImage() throws Exception {
+        Path image = writeImage(Path.of("src/test/resources"));
+
+        try (var container = new HybridModuleContainer()) {
+            container.discoverHybridModulesInImage(image);
+            // The same JARs are not duplicates.
+            container.discoverHybridModules("src/test/resources");
+
+            RootHybridModule root = container.resolve(new HybridModuleContainer.ResolveParams("find.hybrid.module.two"));
+            Class<?> exportedClass = root.loadClass(TWO_EXPORTED_PUBLIC);
+            assertEquals(image.toUri() + "#find.hybrid.module.two-1.2.3.jar",
+                         HybridModuleContainerTest.jarOf(exportedClass).uri().toString());
+        }
+    }
+
+    @Test
+    public void imageInBuffer() throws Exception {
+        Path image = writeImage(Path.of("src/test/resources/find.hybrid.module.one-1.2.3.jar"));
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(image));
+
+        List<HybridModuleJar> jars = ModuleImage.of(buffer, image, image.toUri()).jars();
+        assertEquals(1, jars.size());
+        assertEquals("find.hybrid.module.one@1.2.3", jars.get(0).hybridModuleId().toString());
+        assertTrue(jars.get(0).hasEntry("module-info.class"));
+    }
+
+    @Test
+    public void invalidImage() throws Exception {
+        Path image = temporaryFolder.newFile("invalid.image").toPath();
+        Files.write(image, new byte[] { 'J', 'H', 'M', 'I', 0, 0, 0, 1, 0, 0, 0, 1, 0 });
+
+        try {
+            ModuleImage.open(image);
+            fail();
+        } catch (InvalidHybridModuleException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid module image " + image));
+        }
+
+        try {
+            ModuleImage.open(Path.of("src/test/resources/find.hybrid.module.one-1.2.3.jar"));
+            fail();
+        } catch (InvalidHybridModuleException e) {
+            assertEquals("Not a module image: src/test/resources/find.hybrid.module.one-1.2.3.jar", e.getMessage());
+        }
+    }
+
+    @Test
+    public void imageIsWrittenWithDefaultPermissions() throws Exception {
+        Path image = writeImage(Path.of("src/test/resources/find.hybrid.module.one-1.2.3.jar"));
+        Path file = temporaryFolder.newFile("file").toPath();
+        assertEquals(Files.getPosixFilePermissions(file), Files.getPosixFilePermissions(image));
+        assertEquals(List.of(image, file), Files.list(image.getParent()).sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void failureToWriteImage() throws Exception {
+        Path image = temporaryFolder.newFile("not-a-directory").toPath().resolve("app.image");
+
+        try (var jars = new ObservableHybridModules()) {
+            jars.discoverHybridModules(Path.of("src/test/resources/find.hybrid.module.one-1.2.3.jar"));
+            ModuleImage.write(image, jars.getHybridModuleIds().stream().map(jars::getJar).collect(Collectors.toList()));
+            fail();
+        } catch (UncheckedIOException e) {
+            assertEquals("Failed to write module image " + image, e.getMessage());
+        }
+    }
+
+    private Path writeImage(Path modulePath) {
+        Path image = temporaryFolder.getRoot().toPath().resolve("app.image");
+        try (var jars = new ObservableHybridModules()) {
+            jars.discoverHybridModules(modulePath);
+            ModuleImage.write(image, jars.getHybridModuleIds().stream().map(jars::getJar).collect(Collectors.toList()));
+        }
+        return image;
+    }
+}
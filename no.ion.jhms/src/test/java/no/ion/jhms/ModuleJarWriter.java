@@ -0,0 +1,159 @@
+package no.ion.jhms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes synthetic hybrid modular JARs for tests and benchmarks, with a module-info.class requiring other hybrid
+ * modules, and a resource file in each exported package.
+ */
+class ModuleJarWriter {
+    private static final int ACC_TRANSITIVE = 0x0020;
+    private static final int ACC_MANDATED = 0x8000;
+    private static final int ACC_MODULE = 0x8000;
+
+    private final String name;
+    private final String version;
+    private final Map<String, Boolean> transitiveByRequires = new LinkedHashMap<>();
+    private final List<String> exports = new ArrayList<>();
+
+    /** A hybrid module with the given name and version, requiring the same version of other hybrid modules. */
+    ModuleJarWriter(String name, String version) {
+        this.name = name;
+        this.version = version;
+    }
+
+    ModuleJarWriter requires(String module) { return requires(module, false); }
+
+    ModuleJarWriter requires(String module, boolean transitive) {
+        transitiveByRequires.put(module, transitive);
+        return this;
+    }
+
+    ModuleJarWriter exports(String packageName) {
+        exports.add(packageName);
+        return this;
+    }
+
+    /** Writes the JAR to directory/name-version.jar, and returns its path. */
+    Path writeTo(Path directory) {
+        Path path = directory.resolve(name + "-" + version + ".jar");
+        try (var out = new ZipOutputStream(Files.newOutputStream(path))) {
+            out.putNextEntry(new ZipEntry("module-info.class"));
+            out.write(moduleInfo());
+            out.closeEntry();
+
+            for (String packageName : exports) {
+                out.putNextEntry(new ZipEntry(packageName.replace('.', '/') + "/resource.txt"));
+                out.write((packageName + "\n").getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return path;
+    }
+
+    /** The module-info.class, see JVMS §4.7.25. */
+    private byte[] moduleInfo() throws IOException {
+        var constantPool = new ConstantPool();
+        int thisClass = constantPool.classInfo("module-info");
+        int moduleAttribute = constantPool.utf8("Module");
+        int moduleName = constantPool.module(name);
+        int moduleVersion = constantPool.utf8(version);
+
+        var module = new ByteArrayOutputStream();
+        var attribute = new DataOutputStream(module);
+        attribute.writeShort(moduleName);
+        attribute.writeShort(0);
+        attribute.writeShort(moduleVersion);
+
+        attribute.writeShort(transitiveByRequires.size() + 1);
+        attribute.writeShort(constantPool.module("java.base"));
+        attribute.writeShort(ACC_MANDATED);
+        attribute.writeShort(0);
+        for (var requires : transitiveByRequires.entrySet()) {
+            attribute.writeShort(constantPool.module(requires.getKey()));
+            attribute.writeShort(requires.getValue() ? ACC_TRANSITIVE : 0);
+            attribute.writeShort(moduleVersion);
+        }
+
+        attribute.writeShort(exports.size());
+        for (String packageName : exports) {
+            attribute.writeShort(constantPool.packageInfo(packageName));
+            attribute.writeShort(0);
+            attribute.writeShort(0);
+        }
+
+        attribute.writeShort(0); // opens
+        attribute.writeShort(0); // uses
+        attribute.writeShort(0); // provides
+
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(53); // Java 9
+        constantPool.write(out);
+        out.writeShort(ACC_MODULE);
+        out.writeShort(thisClass);
+        out.writeShort(0); // super_class
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+        out.writeShort(0); // methods
+        out.writeShort(1); // attributes
+        out.writeShort(moduleAttribute);
+        out.writeInt(module.size());
+        module.writeTo(out);
+        return bytes.toByteArray();
+    }
+
+    private static class ConstantPool {
+        private final Map<String, Integer> indices = new LinkedHashMap<>();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private int count = 1;
+
+        int utf8(String value) throws IOException {
+            Integer index = indices.get("Utf8:" + value);
+            if (index != null) return index;
+            out.writeByte(1);
+            out.writeUTF(value);
+            return add("Utf8:" + value);
+        }
+
+        int classInfo(String internalName) throws IOException { return reference(7, internalName); }
+        int module(String name) throws IOException { return reference(19, name); }
+        int packageInfo(String name) throws IOException { return reference(20, name.replace('.', '/')); }
+
+        private int reference(int tag, String name) throws IOException {
+            Integer index = indices.get(tag + ":" + name);
+            if (index != null) return index;
+            int nameIndex = utf8(name);
+            out.writeByte(tag);
+            out.writeShort(nameIndex);
+            return add(tag + ":" + name);
+        }
+
+        private int add(String key) {
+            indices.put(key, count);
+            return count++;
+        }
+
+        void write(DataOutputStream classFile) throws IOException {
+            classFile.writeShort(count);
+            bytes.writeTo(classFile);
+        }
+    }
+}
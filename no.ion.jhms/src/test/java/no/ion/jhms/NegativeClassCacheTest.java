@@ -0,0 +1,51 @@
+package no.ion.jhms;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+public class NegativeClassCacheTest {
+    @Test
+    public void boundedSize() throws ClassNotFoundException {
+        var cache = new NegativeClassCache(2, false);
+        cache.add("a.A", new ClassNotFoundException("a.A: not found"));
+        cache.add("b.B", new ClassNotFoundException(null));
+        assertEquals(2, cache.counters().size());
+
+        try {
+            cache.throwIfAbsent("a.A");
+            fail();
+        } catch (ClassNotFoundException e) {
+            assertEquals("a.A: not found", e.getMessage());
+            assertNotEquals(0, e.getStackTrace().length);
+        }
+
+        try {
+            cache.throwIfAbsent("b.B");
+            fail();
+        } catch (ClassNotFoundException e) {
+            assertEquals("b.B", e.getMessage());
+        }
+
+        // Adding a third name clears the cache
+        cache.add("c.C", new ClassNotFoundException("c.C"));
+        cache.throwIfAbsent("a.A");
+
+        CacheCounters counters = cache.counters();
+        assertEquals(2, counters.hits());
+        assertEquals(1, counters.misses());
+        assertEquals(2, counters.evictions());
+        assertEquals(1, counters.size());
+    }
+
+    @Test
+    public void disabled() throws ClassNotFoundException {
+        var cache = new NegativeClassCache(0, true);
+        cache.add("a.A", new ClassNotFoundException("a.A"));
+        cache.throwIfAbsent("a.A");
+        assertEquals(0, cache.counters().size());
+        assertEquals(0, cache.newException("a.A").getStackTrace().length);
+    }
+}
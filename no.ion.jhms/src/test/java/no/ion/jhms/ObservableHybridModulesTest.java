@@ -1,8 +1,13 @@
 package no.ion.jhms;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
 import java.lang.module.FindException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -15,6 +20,9 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class ObservableHybridModulesTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void discoveFromModulePath() {
         var oneId = new HybridModuleId("find.hybrid.module.one", "1.2.3");
@@ -83,4 +91,53 @@ public class ObservableHybridModulesTest {
             }
         }
     }
+
+    @Test
+    public void parallelDiscovery() {
+        try (var sequential = new ObservableHybridModules();
+             var parallel = new ObservableHybridModules(new HybridModuleContainer.Params().discoveryParallelism(4))) {
+            sequential.discoverHybridModulesFromModulePath("src/test/resources");
+            parallel.discoverHybridModulesFromModulePath("src/test/resources");
+            assertEquals(sequential.getHybridModuleIds(), parallel.getHybridModuleIds());
+            for (HybridModuleId id : sequential.getHybridModuleIds()) {
+                assertEquals(sequential.getJar(id).path(), parallel.getJar(id).path());
+                assertEquals(sequential.getJar(id).descriptor(), parallel.getJar(id).descriptor());
+            }
+        }
+    }
+
+    @Test
+    public void parallelDiscoveryOfDuplicates() throws IOException {
+        Path first = temporaryFolder.newFolder("first").toPath();
+        Path second = temporaryFolder.newFolder("second").toPath();
+        Files.copy(Path.of("src/test/resources/rich.descriptor-1.3.4.jar"), first.resolve("rich.descriptor-1.3.4.jar"));
+        Files.copy(Path.of("src/test/resources/required-3.1.jar"), second.resolve("required-3.1.jar"));
+        Files.copy(Path.of("src/test/resources/copies/rich.descriptor-1.3.4-copy.jar"), second.resolve("rich.descriptor-1.3.4.jar"));
+
+        // An identical copy is fine, and the first JAR is kept.
+        try (var parallel = new ObservableHybridModules(new HybridModuleContainer.Params().discoveryParallelism(4))) {
+            parallel.discoverHybridModules(List.of(first, second));
+            assertEquals(first.resolve("rich.descriptor-1.3.4.jar"), parallel.getJar(new HybridModuleId("rich.descriptor", "1.3.4")).path());
+        }
+
+        // A different JAR claiming the same ID fails the same way as sequential discovery.
+        Path third = temporaryFolder.newFolder("third").toPath();
+        Files.copy(Path.of("src/test/resources/copies/rich.descriptor-1.3.4-nocopy.jar"), third.resolve("rich.descriptor-1.3.4.jar"));
+        List<Path> paths = List.of(first, second, third);
+        String sequentialMessage = discoverAndGetFindExceptionMessage(new ObservableHybridModules(), paths);
+        String parallelMessage = discoverAndGetFindExceptionMessage(new ObservableHybridModules(new HybridModuleContainer.Params().discoveryParallelism(4)), paths);
+        assertEquals("Both " + third.resolve("rich.descriptor-1.3.4.jar") + " and " + first.resolve("rich.descriptor-1.3.4.jar") +
+                     " claim to be hybrid module rich.descriptor@1.3.4", parallelMessage);
+        assertEquals(sequentialMessage, parallelMessage);
+    }
+
+    private static String discoverAndGetFindExceptionMessage(ObservableHybridModules observableHybridModules, List<Path> paths) {
+        try (observableHybridModules) {
+            observableHybridModules.discoverHybridModules(paths);
+            fail();
+            return null;
+        } catch (FindException e) {
+            return e.getMessage();
+        }
+    }
 }
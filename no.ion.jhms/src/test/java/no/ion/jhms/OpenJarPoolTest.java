@@ -0,0 +1,149 @@
+package no.ion.jhms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OpenJarPoolTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void leastRecentlyUsedIsClosed() throws IOException {
+        var pool = new OpenJarPool(2);
+        // Not mappable, and read with a ModuleReader
+        try (var required = HybridModuleJar.open(multiReleaseCopyOf(Path.of("src/test/resources/required-3.1.jar")));
+             var rich = HybridModuleJar.open(multiReleaseCopyOf(Path.of("src/test/resources/rich.descriptor-1.3.4.jar")));
+             var one = HybridModuleJar.open(multiReleaseCopyOf(Path.of("src/test/resources/find.hybrid.module.one-1.2.3.jar")));
+             var mapped = HybridModuleJar.open(Path.of("src/test/resources/required-3.1.jar"))) {
+            required.setOpenJarPool(pool);
+            rich.setOpenJarPool(pool);
+            one.setOpenJarPool(pool);
+            mapped.setOpenJarPool(pool);
+
+            assertNotNull(required.getClassBytes("required.Required"));
+            assertNotNull(rich.getClassBytes("rich.descriptor.Main"));
+            assertNotNull(required.getClassBytes("required.exported.RequiredExported"));
+            assertCounters(pool, 1, 2, 0, 2);
+
+            // rich was used less recently than required.
+            assertNotNull(one.getClassBytes("no.ion.jhms.test.FindHybridModule.one.exported.OneExportedPublic"));
+            assertCounters(pool, 1, 3, 1, 2);
+            assertTrue(required.isContentOpen());
+            assertFalse(rich.isContentOpen());
+            assertTrue(one.isContentOpen());
+
+            // A mapped JAR keeps no file open, and is not in the pool.
+            assertNotNull(mapped.getClassBytes("required.Required"));
+            assertTrue(mapped.isContentOpen());
+            assertCounters(pool, 1, 3, 1, 2);
+
+            // rich and then required are reopened transparently.
+            assertNotNull(rich.getClassBytes("rich.descriptor.exported.E"));
+            assertFalse(required.isContentOpen());
+            assertNotNull(required.getClassBytes("required.Required"));
+            assertFalse(one.isContentOpen());
+            assertCounters(pool, 1, 5, 3, 2);
+
+            // The JAR is read correctly after having been closed.
+            assertEquals("Exported file.\n", read(required, "required/exported/exported.txt"));
+            assertCounters(pool, 2, 5, 3, 2);
+
+            required.close();
+            assertEquals(1, pool.counters().size());
+        }
+    }
+
+    @Test
+    public void entriesOfClosedJarAreKnownWithoutReopening() throws IOException {
+        var pool = new OpenJarPool(1);
+        try (var required = HybridModuleJar.open(multiReleaseCopyOf(Path.of("src/test/resources/required-3.1.jar")));
+             var rich = HybridModuleJar.open(multiReleaseCopyOf(Path.of("src/test/resources/rich.descriptor-1.3.4.jar")))) {
+            required.setOpenJarPool(pool);
+            rich.setOpenJarPool(pool);
+
+            assertNotNull(required.getClassBytes("required.Required"));
+            assertNotNull(rich.getClassBytes("rich.descriptor.Main"));
+            assertFalse(required.isContentOpen());
+
+            assertTrue(required.hasEntry("required/exported/exported.txt"));
+            assertFalse(required.hasEntry("required/missing.txt"));
+            assertTrue(required.getResourceAsStream("required/missing.txt").isEmpty());
+            assertNull(required.getClassBytes("required.Missing"));
+            assertTrue(required.entryNames().contains("required/Required.class"));
+            assertFalse(required.isContentOpen());
+            assertCounters(pool, 0, 2, 1, 1);
+        }
+    }
+
+    @Test
+    public void container() throws ClassNotFoundException, IOException {
+        multiReleaseCopyOf(Path.of("src/test/resources/required-3.1.jar"));
+        multiReleaseCopyOf(Path.of("src/test/resources/rich.descriptor-1.3.4.jar"));
+
+        var pool = new OpenJarPool(1);
+        var params = new HybridModuleContainer.Params().openJarPool(pool);
+        try (var container = new HybridModuleContainer(params)) {
+            container.discoverHybridModules(temporaryFolder.getRoot().toPath());
+            RootHybridModule root = container.resolve(new HybridModuleContainer.ResolveParams("rich.descriptor"));
+            for (int i = 0; i < 3; ++i) {
+                Class<?> requiredClass = root.getClassLoader().loadClass("required.exported.RequiredExported");
+                try (InputStream in = requiredClass.getClassLoader().getResourceAsStream("required/exported/exported.txt")) {
+                    assertNotNull(in);
+                }
+                try (InputStream in = root.getClassLoader().getResourceAsStream("rich/descriptor/exported/exported.txt")) {
+                    assertNotNull(in);
+                }
+            }
+            assertTrue(pool.counters().evictions() > 0);
+            assertEquals(1, pool.counters().size());
+        }
+    }
+
+    private static void assertCounters(OpenJarPool pool, long hits, long misses, long evictions, int size) {
+        CacheCounters counters = pool.counters();
+        assertEquals(counters.toString(), hits, counters.hits());
+        assertEquals(counters.toString(), misses, counters.misses());
+        assertEquals(counters.toString(), evictions, counters.evictions());
+        assertEquals(counters.toString(), size, counters.size());
+    }
+
+    private static String read(HybridModuleJar jar, String name) throws IOException {
+        try (InputStream in = jar.getResourceAsStream(name).orElseThrow()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private Path multiReleaseCopyOf(Path jar) throws IOException {
+        Path copy = temporaryFolder.getRoot().toPath().resolve(jar.getFileName());
+        try (var zipFile = new ZipFile(jar.toFile());
+             var out = new ZipOutputStream(Files.newOutputStream(copy))) {
+            for (var entries = zipFile.entries(); entries.hasMoreElements(); ) {
+                ZipEntry entry = entries.nextElement();
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    in.transferTo(out);
+                }
+                out.closeEntry();
+            }
+            out.putNextEntry(new ZipEntry("META-INF/versions/11/"));
+            out.closeEntry();
+        }
+        return copy;
+    }
+}
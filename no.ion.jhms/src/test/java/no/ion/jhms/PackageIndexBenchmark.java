@@ -0,0 +1,83 @@
+package no.ion.jhms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the package-to-owner lookup done by {@link HybridModuleClassLoader} per class load: the former
+ * {@link PackageUtil#getPackageName(String)} followed by a platform and hybrid {@link TreeMap} lookup, versus a
+ * single {@link PackageIndex#getByClassName(String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackageIndexBenchmark {
+    /** The number of visible packages, ~400 hybrid modules with 25 packages each, plus java.se. */
+    @Param({"1000", "10000"})
+    public int packages;
+
+    private final TreeMap<String, Object> platformModulesByPackage = new TreeMap<>();
+    private final TreeMap<String, Object> hybridModulesByPackage = new TreeMap<>();
+    private PackageIndex<Object> modulesByPackage;
+    private String[] classNames;
+
+    @Setup
+    public void setup() {
+        var random = new Random(17);
+        var moduleByPackage = new HashMap<String, Object>();
+        String[] packageNames = new String[packages];
+        for (int i = 0; i < packages; ++i) {
+            Object module = "module" + (i / 25);
+            packageNames[i] = "com.example.module" + (i / 25) + ".feature" + (i % 25) + ".impl";
+            if (i % 10 == 0) {
+                platformModulesByPackage.put(packageNames[i], module);
+            } else {
+                hybridModulesByPackage.put(packageNames[i], module);
+            }
+            moduleByPackage.put(packageNames[i], module);
+        }
+        modulesByPackage = PackageIndex.of(moduleByPackage);
+
+        classNames = new String[4096];
+        for (int i = 0; i < classNames.length; ++i) {
+            classNames[i] = packageNames[random.nextInt(packages)] + ".SomeClass" + i;
+        }
+    }
+
+    @Benchmark
+    public void treeMaps(Blackhole blackhole) {
+        for (String className : classNames) {
+            String packageName = PackageUtil.getPackageName(className);
+            Object owner = platformModulesByPackage.get(packageName);
+            if (owner == null) {
+                owner = hybridModulesByPackage.get(packageName);
+            }
+            blackhole.consume(owner);
+        }
+    }
+
+    @Benchmark
+    public void packageIndex(Blackhole blackhole) {
+        for (String className : classNames) {
+            blackhole.consume(modulesByPackage.getByClassName(className));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package no.ion.jhms;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PackageIndexTest {
+    @Test
+    public void lookup() {
+        PackageIndex<String> index = PackageIndex.of(Map.of("a.b", "ab", "a", "a", "", "unnamed"));
+        assertEquals(3, index.size());
+
+        assertEquals("ab", index.get("a.b"));
+        assertEquals("a", index.get("a"));
+        assertEquals("unnamed", index.get(""));
+        assertNull(index.get("a.b.c"));
+        assertNull(index.get("b"));
+
+        assertEquals("ab", index.getByClassName("a.b.C"));
+        assertEquals("a", index.getByClassName("a.B"));
+        assertEquals("unnamed", index.getByClassName("C"));
+        assertNull(index.getByClassName("a.b.c.D"));
+        assertNull(index.getByClassName("a.bc.D"));
+        assertTrue(index.containsClassName("a.b.C$Inner"));
+        assertFalse(index.containsClassName("b.C"));
+
+        assertEquals(new TreeMap<>(Map.of("a.b", "ab", "a", "a", "", "unnamed")), index.toTreeMap());
+    }
+
+    @Test
+    public void empty() {
+        PackageIndex<String> index = PackageIndex.of(Map.of());
+        assertEquals(0, index.size());
+        assertNull(index.get(""));
+        assertNull(index.getByClassName("a.B"));
+    }
+
+    @Test
+    public void collisions() {
+        // "Aa" and "BB" have the same String::hashCode.
+        Map<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < 1000; ++i) {
+            map.put("p" + i + ".Aa", i);
+            map.put("p" + i + ".BB", -i);
+        }
+
+        PackageIndex<Integer> index = PackageIndex.of(map);
+        assertEquals(2000, index.size());
+        map.forEach((packageName, value) -> {
+            assertEquals(value, index.get(packageName));
+            assertEquals(value, index.getByClassName(packageName + ".Class"));
+        });
+        assertNull(index.get("p1000.Aa"));
+    }
+
+    @Test
+    public void sharedIndexIsUpdatedInPlace() {
+        var index = new SharedPackageIndex();
+        var modules = new ArrayList<BaseModule>();
+        for (int i = 0; i < 100; ++i) {
+            BaseModule module = new BaseModule("m" + i, Set.of(), Map.of()) {};
+            index.register(module, List.of("m" + i + ".a", "m" + i + ".b", "common"));
+            modules.add(module);
+
+            assertEquals(i, module.ordinal());
+            assertEquals(2 * (i + 1) + 1, index.packageCount());
+            assertArrayEquals(new BaseModule[] { module }, get(index, "m" + i + ".b"));
+            assertEquals(modules, List.of(get(index, "common")));
+        }
+
+        for (int i = 0; i < 100; ++i) {
+            assertArrayEquals(new BaseModule[] { modules.get(i) }, get(index, "m" + i + ".a"));
+            assertSame(modules.get(i), index.module(i));
+            assertEquals(List.of("m" + i + ".a", "m" + i + ".b", "common"), index.packages(i));
+        }
+        assertNull(get(index, "m100.a"));
+    }
+
+    private static BaseModule[] get(SharedPackageIndex index, String packageName) {
+        return index.get(packageName, packageName.length(), packageName.hashCode());
+    }
+}
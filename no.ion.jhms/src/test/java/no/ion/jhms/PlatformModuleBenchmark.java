@@ -0,0 +1,99 @@
+package no.ion.jhms;
+
+import java.io.IOException;
+import java.lang.module.ModuleFinder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Measures the time to resolve the platform module graph required by a typical application, in a fresh JVM: The
+ * resolution of java.base, java.sql, java.desktop, java.xml, and java.logging with their read closures, the
+ * packages visible to hybrid modules, and the registration in the shared package index.
+ *
+ * <p>The platform modules are found with the system module finder, and then read from a
+ * {@link PlatformModuleIndex}. Each run launches a new JVM, with the classpath of this JVM, which times the creation
+ * of a container with the system module finder or the mapped index, the resolution by the container, and then the
+ * creation of and resolution by a second container of the same JVM. The second resolution has the classes of the
+ * first already loaded and initialized, and is the part of the first resolution that is specific to the platform
+ * module graph.</p>
+ */
+public class PlatformModuleBenchmark {
+    private static final List<String> MODULES = List.of("java.base", "java.sql", "java.desktop", "java.xml", "java.logging");
+    private static final int WARMUP_RUNS = 2;
+    private static final int RUNS = 10;
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        if (args.length >= 1 && args[0].equals("--resolve")) {
+            Supplier<PlatformModuleContainer> newContainer = args.length == 1 ?
+                    PlatformModuleContainer::new :
+                    () -> PlatformModuleContainer.withIndex(Path.of(args[1]));
+            long start = System.nanoTime();
+            var container = newContainer.get();
+            long finder = System.nanoTime();
+            MODULES.forEach(container::resolve);
+            long first = System.nanoTime();
+            MODULES.forEach(newContainer.get()::resolve);
+            long second = System.nanoTime();
+            System.out.println((finder - start) + " " + (first - finder) + " " + (second - first) + " " +
+                               container.platformModules().size());
+            return;
+        }
+
+        Path index = Files.createTempFile("jhms-", ".index");
+        try {
+            PlatformModuleIndex.write(index, ModuleFinder.ofSystem(), PlatformModuleIndex.key());
+            run("the system module finder", "create the system module finder");
+            run("the index", "map the index", index.toString());
+        } finally {
+            Files.deleteIfExists(index);
+        }
+    }
+
+    private static void run(String source, String finderPhase, String... indexArgs) throws IOException, InterruptedException {
+        for (int i = 0; i < WARMUP_RUNS; ++i) {
+            launch(indexArgs);
+        }
+
+        long totalNanos = 0;
+        long totalFinderNanos = 0;
+        long totalFirstNanos = 0;
+        long totalSecondNanos = 0;
+        int platformModules = 0;
+        for (int i = 0; i < RUNS; ++i) {
+            long start = System.nanoTime();
+            String[] output = launch(indexArgs);
+            totalNanos += System.nanoTime() - start;
+            totalFinderNanos += Long.parseLong(output[0]);
+            totalFirstNanos += Long.parseLong(output[1]);
+            totalSecondNanos += Long.parseLong(output[2]);
+            platformModules = Integer.parseInt(output[3]);
+        }
+
+        System.out.printf("Resolving %d platform modules with %s: %.1f ms to %s, %.1f ms first, " +
+                          "%.1f ms second, of %.1f ms per JVM launch (mean of %d launches)%n", platformModules,
+                          source, totalFinderNanos / 1e6 / RUNS, finderPhase, totalFirstNanos / 1e6 / RUNS,
+                          totalSecondNanos / 1e6 / RUNS, totalNanos / 1e6 / RUNS, RUNS);
+    }
+
+    private static String[] launch(String... indexArgs) throws IOException, InterruptedException {
+        var command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                PlatformModuleBenchmark.class.getName(),
+                "--resolve"));
+        command.addAll(List.of(indexArgs));
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IllegalStateException(PlatformModuleBenchmark.class.getName() + " --resolve exited with " + exitCode);
+        }
+        return output.split(" ");
+    }
+}
@@ -0,0 +1,98 @@
+package no.ion.jhms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.module.FindException;
+import java.lang.module.ModuleFinder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlatformModuleContainerTest {
+    private static final List<String> MODULES = List.of("java.base", "java.sql", "java.desktop", "java.xml", "java.logging");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void indexResolvesLikeTheSystemModuleFinder() {
+        Path file = temporaryFolder.getRoot().toPath().resolve("platform.index");
+        PlatformModuleContainer writer = PlatformModuleContainer.withIndex(file);
+        assertFalse(writer.usesIndex());
+        assertTrue(Files.isRegularFile(file));
+
+        PlatformModuleContainer container = PlatformModuleContainer.withIndex(file);
+        assertTrue(container.usesIndex());
+        var live = new PlatformModuleContainer();
+        for (String name : MODULES) {
+            PlatformModule expected = live.resolve(name).orElseThrow();
+            PlatformModule actual = container.resolve(name).orElseThrow();
+            assertEquals(expected.packagesVisibleToHybridModules(), actual.packagesVisibleToHybridModules());
+            assertEquals(names(expected.reads()), names(actual.reads()));
+            assertEquals(names(expected.readClosure()), names(actual.readClosure()));
+        }
+
+        assertEquals(live.platformModules().keySet(), container.platformModules().keySet());
+        assertTrue(container.isObservable("java.net.http"));
+        assertFalse(container.isObservable("find.hybrid.module.one"));
+        assertTrue(container.resolve("find.hybrid.module.one").isEmpty());
+        try {
+            container.resolve("java.nonexistent");
+            fail();
+        } catch (FindException e) {
+            assertEquals("Failed to find platform module: java.nonexistent", e.getMessage());
+        }
+    }
+
+    @Test
+    public void keyIsJavaHomeAndRuntimeVersion() {
+        assertEquals(System.getProperty("java.home") + " " + Runtime.version(), PlatformModuleIndex.key());
+    }
+
+    @Test
+    public void fallbackToSystemModuleFinderForIndexOfAnotherJdk() {
+        Path file = temporaryFolder.getRoot().toPath().resolve("platform.index");
+        PlatformModuleIndex.write(file, ModuleFinder.ofSystem(), "/other/java/home 11.0.2+9");
+
+        PlatformModuleContainer container = PlatformModuleContainer.withIndex(file);
+        assertFalse(container.usesIndex());
+        assertEquals(Set.of("java.logging", "java.sql", "java.transaction.xa", "java.xml"),
+                     names(container.resolve("java.sql").orElseThrow().readClosure()));
+
+        // The index is rewritten for this JDK.
+        assertTrue(PlatformModuleContainer.withIndex(file).usesIndex());
+    }
+
+    @Test
+    public void fallbackToSystemModuleFinderForInvalidIndex() throws Exception {
+        Path file = temporaryFolder.newFile("platform.index").toPath();
+        Files.writeString(file, "not an index");
+
+        PlatformModuleContainer container = PlatformModuleContainer.withIndex(file);
+        assertFalse(container.usesIndex());
+        assertTrue(container.resolve("java.logging").isPresent());
+    }
+
+    @Test
+    public void failureToWriteIndexIsIgnored() throws Exception {
+        Path file = temporaryFolder.newFile("not-a-directory").toPath().resolve("platform.index");
+
+        PlatformModuleContainer container = PlatformModuleContainer.withIndex(file);
+        assertFalse(container.usesIndex());
+        assertTrue(container.resolve("java.logging").isPresent());
+        assertFalse(Files.exists(file));
+    }
+
+    private static Set<String> names(Set<PlatformModule> platformModules) {
+        return platformModules.stream().map(PlatformModule::name).collect(Collectors.toSet());
+    }
+}
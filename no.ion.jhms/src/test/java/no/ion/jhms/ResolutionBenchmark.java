@@ -0,0 +1,88 @@
+package no.ion.jhms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Resolves a synthetic graph of 1,000 hybrid modules in 20 levels of 50.
+ *
+ * <p>Each hybrid module exports 4 packages, and requires 3 hybrid modules of the level below, one of them
+ * transitively. The root requires the hybrid modules of the top level.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResolutionBenchmark {
+    private static final int LEVELS = 20;
+    private static final int WIDTH = 50;
+    private static final int PACKAGES = 4;
+
+    private Path directory;
+    private HybridModuleContainer container;
+
+    @Setup(Level.Trial)
+    public void writeJars() throws IOException {
+        directory = Files.createTempDirectory("ResolutionBenchmark");
+        var root = new ModuleJarWriter("root", "1");
+        for (int level = 0; level < LEVELS; ++level) {
+            for (int i = 0; i < WIDTH; ++i) {
+                var writer = new ModuleJarWriter(name(level, i), "1");
+                for (int p = 0; p < PACKAGES; ++p) {
+                    writer.exports(name(level, i) + ".p" + p);
+                }
+                if (level > 0) {
+                    writer.requires(name(level - 1, i), true)
+                          .requires(name(level - 1, (i + 1) % WIDTH))
+                          .requires(name(level - 1, (i + 7) % WIDTH));
+                }
+                writer.writeTo(directory);
+                if (level == LEVELS - 1) {
+                    root.requires(name(level, i));
+                }
+            }
+        }
+        root.writeTo(directory);
+    }
+
+    /** The hybrid modules are resolved once per container, so discover them in a new container per invocation. */
+    @Setup(Level.Invocation)
+    public void discover() {
+        container = new HybridModuleContainer();
+        container.discoverHybridModules(directory);
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() { container.close(); }
+
+    @TearDown(Level.Trial)
+    public void removeJars() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public RootHybridModule resolve() { return container.resolve(new HybridModuleContainer.ResolveParams("root")); }
+
+    private static String name(int level, int index) { return "m" + level + ".i" + index; }
+}
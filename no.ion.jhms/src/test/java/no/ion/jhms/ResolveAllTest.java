@@ -0,0 +1,100 @@
+package no.ion.jhms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ResolveAllTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void resolveAll() throws IOException {
+        Path directory = writeJars();
+        try (var container = new HybridModuleContainer()) {
+            container.discoverHybridModules(directory);
+            List<RootHybridModule> roots = container.resolveAll(List.of(params("plugin.b"), params("plugin.a")));
+            assertEquals(List.of("plugin.b@1", "plugin.a@1"), roots.stream().map(RootHybridModule::toString).collect(Collectors.toList()));
+
+            // The shared hybrid module is resolved once.
+            assertSame(shared(roots.get(0)), shared(roots.get(1)));
+        }
+    }
+
+    @Test
+    public void allFailuresAreReported() throws IOException {
+        Path directory = writeJars();
+        List<String> roots = List.of("plugin.a", "missing.top", "nonexistent", "plugin.b", "cycle.top", "split.top");
+
+        try (var container = new HybridModuleContainer()) {
+            container.discoverHybridModules(directory);
+            try {
+                container.resolveAll(roots.stream().map(ResolveAllTest::params).collect(Collectors.toList()));
+                fail();
+            } catch (HybridModuleResolutionException e) {
+                assertEquals(List.of("missing.top", "nonexistent", "cycle.top", "split.top"), List.copyOf(e.failures().keySet()));
+                e.failures().forEach((root, failure) -> {
+                    RuntimeException expected = resolveFailure(directory, root);
+                    assertEquals(expected.getClass(), failure.getClass());
+                    assertEquals(expected.getMessage(), failure.getMessage());
+                });
+                assertEquals("Failed to resolve 4 root hybrid modules:\n" +
+                             "  missing.top: Hybrid module missing.bottom@1 not found: Required by missing.top@1\n" +
+                             "  nonexistent: Hybrid module nonexistent not found\n" +
+                             "  cycle.top: Cyclic dependency on hybrid module cycle.a@1 detected: Required by cycle.b@1: Required by cycle.a@1: Required by cycle.top@1\n" +
+                             "  split.top: Package split.common visible to hybrid module split.top@1 is exported from two different readable modules (split.b@1 and split.a@1)",
+                             e.getMessage());
+                assertEquals(4, e.getSuppressed().length);
+            }
+
+            // The roots that resolved stay resolved.
+            RootHybridModule pluginA = container.resolve(params("plugin.a"));
+            RootHybridModule pluginB = container.resolve(params("plugin.b"));
+            assertSame(shared(pluginA), shared(pluginB));
+        }
+    }
+
+    private Path writeJars() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        new ModuleJarWriter("plugin.a", "1").requires("shared").writeTo(directory);
+        new ModuleJarWriter("plugin.b", "1").requires("shared").writeTo(directory);
+        new ModuleJarWriter("shared", "1").exports("shared.api").writeTo(directory);
+        new ModuleJarWriter("missing.top", "1").requires("shared").requires("missing.bottom").writeTo(directory);
+        new ModuleJarWriter("cycle.top", "1").requires("cycle.a").writeTo(directory);
+        new ModuleJarWriter("cycle.a", "1").requires("cycle.b").writeTo(directory);
+        new ModuleJarWriter("cycle.b", "1").requires("cycle.a").writeTo(directory);
+        new ModuleJarWriter("split.top", "1").requires("split.a").requires("split.b").writeTo(directory);
+        new ModuleJarWriter("split.a", "1").exports("split.common").writeTo(directory);
+        new ModuleJarWriter("split.b", "1").exports("split.common").writeTo(directory);
+        return directory;
+    }
+
+    private static RuntimeException resolveFailure(Path directory, String root) {
+        try (var container = new HybridModuleContainer()) {
+            container.discoverHybridModules(directory);
+            container.resolve(params(root));
+            fail();
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static HybridModuleContainer.ResolveParams params(String root) { return new HybridModuleContainer.ResolveParams(root); }
+
+    private static HybridModule shared(RootHybridModule root) {
+        return root.hybridModule().hybridReads().stream()
+                .filter(hybridModule -> hybridModule.id().name().equals("shared"))
+                .findFirst()
+                .orElseThrow();
+    }
+}
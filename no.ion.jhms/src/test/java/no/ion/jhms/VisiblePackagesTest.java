@@ -0,0 +1,109 @@
+package no.ion.jhms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class VisiblePackagesTest {
+    private static final int LEVELS = 20;
+    private static final int WIDTH = 20;
+    private static final int PACKAGES = 4;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void packagesExportedToAllAreShared() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        new ModuleJarWriter("a", "1").exports("common").exports("a.api").writeTo(directory);
+        new ModuleJarWriter("b", "1").exports("common").writeTo(directory);
+        new ModuleJarWriter("reads.a", "1").requires("a").requires("java.sql").writeTo(directory);
+        new ModuleJarWriter("reads.b", "1").requires("b").writeTo(directory);
+
+        try (var container = new HybridModuleContainer()) {
+            container.discoverHybridModules(directory);
+            HybridModule readsA = container.resolve(new HybridModuleContainer.ResolveParams("reads.a")).hybridModule();
+            HybridModule readsB = container.resolve(new HybridModuleContainer.ResolveParams("reads.b")).hybridModule();
+            HybridModule a = readsA.hybridReads().get(0);
+            HybridModule b = readsB.hybridReads().get(0);
+            assertEquals("a@1", a.id().toString());
+
+            // Both a and b export the package "common" to all, but no hybrid module reads both.
+            VisiblePackages visibleToA = readsA.getClassLoader().visiblePackages();
+            VisiblePackages visibleToB = readsB.getClassLoader().visiblePackages();
+            assertSame(a, visibleToA.getByClassName("common.Class"));
+            assertSame(b, visibleToB.getByClassName("common.Class"));
+            assertSame(a, visibleToA.get("a.api"));
+            assertNull(visibleToB.get("a.api"));
+
+            // Platform packages are visible if the platform module is read.
+            assertEquals("java.sql", ((PlatformModule) visibleToA.getByClassName("java.sql.Connection")).name());
+            assertEquals("java.logging", ((PlatformModule) visibleToA.get("java.util.logging")).name());
+            assertEquals("java.base", ((PlatformModule) visibleToB.get("java.lang")).name());
+            assertNull(visibleToB.get("java.sql"));
+            assertNull(visibleToB.getByClassName("ClassInUnnamedPackage"));
+
+            TreeMap<String, BaseModule> visible = visibleToB.toTreeMap();
+            assertSame(b, visible.get("common"));
+            assertTrue(visible.containsKey("java.util"));
+            assertEquals(0, visibleToB.privatePackageCount());
+        }
+    }
+
+    /**
+     * Resolves 400 hybrid modules reading java.sql and java.desktop and many hybrid modules, and verifies that only
+     * the packages of each hybrid module are kept per hybrid module, while the hundreds of packages visible to each
+     * are looked up in the shared indices.
+     */
+    @Test
+    public void visiblePackagesAreMostlyShared() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        var root = new ModuleJarWriter("root", "1");
+        for (int level = 0; level < LEVELS; ++level) {
+            for (int i = 0; i < WIDTH; ++i) {
+                var writer = new ModuleJarWriter(name(level, i), "1").requires("java.sql").requires("java.desktop");
+                for (int p = 0; p < PACKAGES; ++p) {
+                    writer.exports(name(level, i) + ".p" + p);
+                }
+                if (level > 0) {
+                    writer.requires(name(level - 1, i), true).requires(name(level - 1, (i + 1) % WIDTH));
+                }
+                writer.writeTo(directory);
+                if (level == LEVELS - 1) {
+                    root.requires(name(level, i));
+                }
+            }
+        }
+        root.writeTo(directory);
+
+        try (var container = new HybridModuleContainer()) {
+            container.discoverHybridModules(directory);
+            HybridModule top = container.resolve(new HybridModuleContainer.ResolveParams("root")).hybridModule();
+
+            int privatePackages = 0;
+            int visiblePackages = 0;
+            for (HybridModule hybridModule : top.hybridReads()) {
+                VisiblePackages packages = hybridModule.getClassLoader().visiblePackages();
+                if (hybridModule != top) {
+                    assertEquals(PACKAGES, packages.privatePackageCount());
+                }
+                privatePackages += packages.privatePackageCount();
+                visiblePackages += packages.toTreeMap().size();
+            }
+
+            assertEquals(LEVELS * WIDTH * PACKAGES, privatePackages);
+            assertTrue("Visible packages " + visiblePackages, visiblePackages > 100 * LEVELS * WIDTH);
+        }
+    }
+
+    private static String name(int level, int index) { return "m" + level + ".i" + index; }
+}